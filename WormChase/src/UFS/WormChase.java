@@ -14,7 +14,9 @@ import java.awt.event.WindowListener;
 import javax.swing.JFrame;
 import javax.swing.JTextField;
 
-public class WormChase extends JFrame{
+import engine.StatusListener;
+
+public class WormChase extends JFrame implements StatusListener{
 
 	private static int DEFAULT_FPS = 80;
 	
@@ -29,14 +31,14 @@ public class WormChase extends JFrame{
 		Container c = getContentPane();
 		c.setLayout(new BorderLayout() );
 		
+		jtfBox = new JTextField();	// before the panel, which may restore a game and report it
+		jtfTime = new JTextField();
+		
 		WormPanel wp = new WormPanel(this, period);
 		c.add(wp, "Center");
 		
 		setUndecorated(true); 	// no borders or title bars
 		setIgnoreRepaint(true);	// turn off paint events since doing active rendering
-		
-		jtfBox = new JTextField();
-		jtfTime = new JTextField();
 	
 		pack();
 		setResizable(false);
@@ -50,10 +52,10 @@ public class WormChase extends JFrame{
 		if (args.length != 0)
 			fps = Integer.parseInt(args[0]);
 		
-		long period = (long) 1000.0/fps;
-		System.out.println("fps: " + fps + "; period: " + period + " ms");
+		long period = 1000000000L/fps;	// in nanosecs, so 144 FPS isn't rounded to 6 ms
+		System.out.println("fps: " + fps + "; period: " + (period/1000000.0) + " ms");
 		
-		new WormChase(period*1000000L);		// ms --> nanosecs
+		new WormChase(period);
 		
 	}
 	
@@ -1,9 +1,9 @@
 package UFS;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.event.KeyAdapter;
@@ -11,11 +11,26 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.awt.image.BufferStrategy;
 import java.text.DecimalFormat;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 
+import engine.Clock;
+import engine.FramePacer;
+import engine.FrameStats;
+import engine.GameEvents;
+import engine.GameRenderer;
+import engine.GameSnapshot;
+import engine.GameState;
+import engine.GameUpdater;
+import engine.InputRecorder;
+import engine.SpectatorServer;
+import engine.TelemetryWriter;
+import engine.Worm;
+import engine.WormEngine;
+
 public class WormPanel extends JPanel implements Runnable{
 	
 	// record stats ever 1 second (roughly)
@@ -28,8 +43,10 @@ public class WormPanel extends JPanel implements Runnable{
 	
 	private static final int NO_DELAYS_PER_YIELD = 1000;
 
+	private static final int NUM_BUFFERS = 2;	// used for page flipping
+
 	// used for gathering statistics
-	private long statsInterval = 0L; 	// in ms
+	private long statsInterval = 0L; 	// in ns
 	private long prevStatsTime;
 	private long totalElapsedTime = 0L;
 	
@@ -41,35 +58,36 @@ public class WormPanel extends JPanel implements Runnable{
 	private double averageUPS = 0.0;
 
 	private WormChase wcTop;
-	private Obstacles obs;
-	private Worm fred;
+	private WormEngine engine;
+	private GameRenderer renderer;
+	private GameUpdater updater;	// null if updating on this thread
+	private GameState renderState = new GameState();
+	private GameState drawnState;	// the state last drawn, for JFR events
 	private Font font;
 	private Object metrics;
 
-	private boolean isPaused;
-	private boolean gameOver;
-	private boolean running;
-	private boolean isOverPauseButton;
-	private boolean isOverQuitButton;
+	private volatile boolean running;	// also stopped by the event thread
+	private volatile boolean isOverPauseButton;	// set by the event thread
+	private volatile boolean isOverQuitButton;
 
-	private int score;
 	private int PWIDTH;
 	private int PHEIGHT;
 
-	private long gameStartTime;
-	private int timeSpentInGame; 	// in seconds
-
 	private long framesSkipped = 0;
 	private long totalFramesSkipped = 0;
 	
 	private DecimalFormat timedf = new DecimalFormat("0.##");	// 2 dp
 	private DecimalFormat df = new DecimalFormat("0.####");		// 4 dp
 	
-	private long period; // period between drawing in ms
+	private long period; // period between drawing in ns
 
-	private Graphics dbg;
+	private FramePacer pacer;
+	private FrameStats frameStats = new FrameStats();	// per-frame phase timings
+	private SpectatorServer spectators;	// null unless -Dwormchase.spectators=<port>
+	private TelemetryWriter telemetry;	// null unless writing per-frame records
+	private long renderTime, presentTime;	// of the last frame, in ns
 
-	private Image dbImage;
+	private BufferStrategy bufferStrategy;
 	
 	private Rectangle pauseArea, quitArea;	
 
@@ -84,19 +102,26 @@ public class WormPanel extends JPanel implements Runnable{
 		
 		wcTop = wc;
 		this.period = period;
+		pacer = new FramePacer(period);
 		
 		pauseArea = new Rectangle(PWIDTH-100, PHEIGHT-65, 70, 15);
 		quitArea = new Rectangle(PWIDTH-100, PHEIGHT-20, 70, 15);
 	
 		setBackground(Color.white);
+		setIgnoreRepaint(true);	// the frame's BufferStrategy does all the drawing
 
 		setFocusable(true);
 		requestFocus();	// now has focus, so receives key events
 		readyForTermination();
 
-		// create game components
-		obs = new Obstacles(wcTop);
-		fred = new Worm(PWIDTH, PHEIGHT, obs);
+		// create the game state
+		engine = new WormEngine(PWIDTH, PHEIGHT, Clock.SYSTEM, wcTop);
+		GameSnapshot.restoreIfRequested(engine);
+		InputRecorder.recordIfRequested(engine, PWIDTH, PHEIGHT);
+		// -Dwormchase.length=<dots> for a longer worm
+		engine.setMaxWormLength( Integer.getInteger("wormchase.length", Worm.DEFAULT_LENGTH) );
+		spectators = SpectatorServer.startIfRequested(engine);
+		telemetry = TelemetryWriter.createIfRequested();
 		
 		addMouseMotionListener(new MouseMotionAdapter() {
 			public void mouseMoved(MouseEvent e)
@@ -120,28 +145,23 @@ public class WormPanel extends JPanel implements Runnable{
 			
 			private void testPress(int x, int y) {
 				if (isOverPauseButton)	// toggle pausing
-					isPaused = !isPaused;
+					engine.postTogglePause();
 				else if (isOverQuitButton)
 					running = false;
-				else {
-					if (!isPaused && !gameOver) {
-						if (fred.nearHead(x,y)) { 	// was mouse press near the head?
-							gameOver = true;
-							score = (40 - timeSpentInGame) + 40 - obs.getNumObstacles();
-							// hack together a score
-						}
-						else { 	// add an obstacle if possible
-							if (!fred.touchedAt(x,y)) 	// was worm's body not touched?
-								obs.add(x,y);
-						}
-					}
-				}
+				else
+					engine.postPress(x, y);
 			}
 		});
 
 		// set up message font
 		font = new Font("SansSerif", Font.BOLD, 24);
 		metrics = this.getFontMetrics(font);
+		renderer = new GameRenderer(font, PWIDTH, PHEIGHT);
+		renderer.useRasterIfRequested();
+
+		updater = GameUpdater.createIfRequested(engine, period);
+		if ((updater != null) && Boolean.getBoolean("wormchase.interpolate"))
+			renderer.setInterpolation( updater.getPeriod() );
 
 		// initialize timing elements
 		fpsStore = new double[NUM_FPS];
@@ -170,13 +190,13 @@ public class WormPanel extends JPanel implements Runnable{
 	public void resumeGame()
 	// called when the JFrame is activated/ de-iconified
 	{
-		isPaused = false;
+		engine.postPause(false);
 	}
 
 	public void pauseGame()
 	// called when the JFrame is deactivated/ iconified
 	{
-		isPaused = true;
+		engine.postPause(true);
 	}
 
 	public void stopGame() {
@@ -192,25 +212,29 @@ public class WormPanel extends JPanel implements Runnable{
 		int noDelays = 0;
 		long excess = 0L;
 
-		gameStartTime = System.nanoTime();
-		prevStatsTime = gameStartTime;
-		beforeTime = gameStartTime;
+		engine.startGame();
+		prevStatsTime = System.nanoTime();
+		beforeTime = prevStatsTime;
+
+		setBufferStrategy();
 
 		running = true;
+		if (updater != null) {
+			updater.setStats(frameStats);
+			updater.start();
+		}
 		while(running) {
-			gameUpdate();
-			gameRender();
-			paintScreen();
+			long updateTime = 0L;
+			if (updater == null)
+				updateTime += timedUpdate();
+			screenUpdate();
 
 			afterTime = System.nanoTime();
 			timeDiff = afterTime - beforeTime;
 			sleepTime = (period - timeDiff) - overSleepTime;
 
 			if (sleepTime > 0) { 	// some time left in this cycle
-				try {
-					Thread.sleep(sleepTime/10000000);	// nano - ms
-				}
-				catch (InterruptedException ex) {}
+				pacer.sleep(sleepTime);
 				overSleepTime = (System.nanoTime() - afterTime) - sleepTime;
 			}
 			else { 		// sleepTime <= 0; frame took longer than the period
@@ -223,68 +247,82 @@ public class WormPanel extends JPanel implements Runnable{
 				}
 			}
 
-			beforeTime = System.nanoTime();
+			long frameStart = System.nanoTime();
+			long frameTime = frameStart - beforeTime;
+			frameStats.record(FrameStats.Phase.FRAME, frameTime);
+			beforeTime = frameStart;
+			pacer.frameStarted(beforeTime);
 
 			/* If frame animation is taking too long, update the game state
 			 * without rendering it, to get the updates/sec nearer to the
 			 * required FPS. 
 			 */
+			GameEvents.FrameSkip skipEv = new GameEvents.FrameSkip();
+			skipEv.begin();
 			int skips = 0;
-			while ((excess > period) && (skips < MAX_FRAME_SKIPS)) {
+			while ((updater == null) && (excess > period) && (skips < MAX_FRAME_SKIPS)) {
 				excess -= period;
-				gameUpdate();	// update state but don't render.
+				updateTime += timedUpdate();	// update state but don't render.
 				skips++;
 			}
+			skipEv.end();
+			if ((skips > 0) && skipEv.shouldCommit()) {
+				skipEv.set(engine.getTickCount(), engine.getWorm().getLength(),
+										engine.getNumObstacles());
+				skipEv.setSkips(skips);
+				skipEv.commit();
+			}
 			framesSkipped += skips;
+			frameStats.framesSkipped(skips);
+			if ((telemetry != null) && (drawnState != null))
+				telemetry.record(frameCount, frameStart, updateTime, renderTime, presentTime,
+									frameTime, skips, drawnState.getTickCount());
 
 			storeStats();
 		}
 
+		if (updater != null)
+			updater.stop();
+		engine.finishRecording();
+		GameSnapshot.saveIfRequested(engine);
+		if (spectators != null)
+			spectators.close();
+		if (telemetry != null)
+			telemetry.close();
 		printStats();
+		pacer.printStats();
+		frameStats.printStats();
 		System.exit(0);		// window disappears
 	}	// end of run()
 
-	private void gameRender() {
-		if (dbImage == null) {
-			dbImage = createImage(PWIDTH, PHEIGHT);
-			if (dbImage == null) {
-				System.out.println("dbImage is null");
-				return;
-			}
-			else
-				dbg = dbImage.getGraphics();
+	private void gameRender(Graphics g) {
+		GameEvents.Render ev = new GameEvents.Render();
+		ev.begin();
+
+		// draw the latest update, or a snapshot of the engine now
+		GameState state;
+		if (updater != null)
+			state = updater.latestState();
+		else {
+			engine.snapshot(renderState);
+			state = renderState;
 		}
-		
-		// clear the background
-		dbg.setColor(Color.white);
-		dbg.fillRect(0, 0, PWIDTH, PWIDTH);
-		
-		dbg.setColor(Color.blue);
-		dbg.setFont(font);
-		
-		// report average FPS and UPS at top left
-		dbg.drawString("Average FPS/UPS: " + df.format(averageFPS) +
-				", " + df.format(averageUPS), 20, 25);
-		
-		// report time used and boxes used at bottom left
-		dbg.drawString("Time spent: " + timeSpentInGame + " secs", 10, PHEIGHT-15);
-		dbg.drawString("Boxes used: " + obs.getNumObstacles(), 260, PHEIGHT-15);
+
+		renderer.drawBackground(g, state);
+		renderer.drawStatus(g, state, averageFPS, averageUPS);
 		
 		// draw the pause and Quit "buttons"
-		drawButtons(dbg);
-		
-		dbg.setColor(Color.black);
+		drawButtons(g, state);
 		
-		// draw game elements: the obstacles and the worm
-		obs.draw(dbg);
-		fred.draw(dbg);
-		
-		if(gameOver)
-			gameOverMessage(dbg);
+		renderer.drawGame(g, state);
+		drawnState = state;
 
+		ev.setState(state);
+		ev.commit();
 	} // end of gameRender()
 
-	private void drawButtons(Graphics g) {
+	private void drawButtons(Graphics g, GameState state) {
+		g.setFont(font);
 		g.setColor(Color.BLACK);
 		
 		// draw the Pause button
@@ -292,7 +330,7 @@ public class WormPanel extends JPanel implements Runnable{
 			g.setColor(Color.green);
 		
 		g.drawOval( pauseArea.x, pauseArea.y-15, pauseArea.width+15, pauseArea.height+15);
-		if (!isPaused)
+		if (!state.isPaused())
 			g.drawString("Paused", pauseArea.x, pauseArea.y+10);
 		else
 			g.drawString("Pause", pauseArea.x, pauseArea.y+10);
@@ -311,61 +349,108 @@ public class WormPanel extends JPanel implements Runnable{
 			g.setColor(Color.black);
 	}
 
-	private void gameOverMessage(Graphics g) {
-		g.drawString("YOU CAUGHT THE WORM!", PWIDTH/2-10, PHEIGHT/2-10);
-		g.drawString("YOU SCORED " + score + " POINTS!", PWIDTH/2-10, PHEIGHT/2+10);
-	}
-
-	// use active rendering to put the buffered image on-screen
-	private void paintScreen() {
-		Graphics g;
+	private void setBufferStrategy()
+	/* Create a BufferStrategy for the frame; it uses page flipping
+	   if the hardware supports it, otherwise it blits from a
+	   VolatileImage back buffer. */
+	{
+		try {
+			EventQueue.invokeAndWait( new Runnable() {
+				public void run()
+				{	wcTop.createBufferStrategy(NUM_BUFFERS); }
+			});
+		}
+		catch (Exception e) {
+			System.out.println("Error while creating buffer strategy: " + e);
+			System.exit(0);
+		}
+		bufferStrategy = wcTop.getBufferStrategy();
+		System.out.println("Page flipping: " +
+				bufferStrategy.getCapabilities().isPageFlipping());
+	} // end of setBufferStrategy()
+
+	private void screenUpdate()
+	/* Draw the frame into the strategy's back buffer and show it.
+	   The back buffer's VolatileImage can lose its contents at any
+	   time (e.g. on a display mode change), so the frame is redrawn
+	   until it has been shown intact. */
+	{
+		renderTime = 0L;
+		presentTime = 0L;
 		try {
-			g = this.getGraphics();
-			if ((g != null) && (dbImage != null))
-				g.drawImage(dbImage, 0, 0, null);
+			do {
+				long renderStart = System.nanoTime();
+				do {
+					Graphics g = bufferStrategy.getDrawGraphics();
+					gameRender(g);
+					g.dispose();
+				} while (bufferStrategy.contentsRestored());
+				long presentStart = System.nanoTime();
+				renderTime += presentStart - renderStart;
+				GameEvents.Present ev = new GameEvents.Present();
+				ev.begin();
+				bufferStrategy.show();
+				ev.setState(drawnState);
+				ev.commit();
+				presentTime += System.nanoTime() - presentStart;
+			} while (bufferStrategy.contentsLost());
+			long syncStart = System.nanoTime();
 			Toolkit.getDefaultToolkit().sync(); // sync the display on some systems
-			g.dispose();
+			presentTime += System.nanoTime() - syncStart;
+			frameStats.record(FrameStats.Phase.RENDER, renderTime);
+			frameStats.record(FrameStats.Phase.PRESENT, presentTime);
+		}
+		catch (Exception e) {
+			System.out.println("Graphics context error: " + e);
+			running = false;
 		}
-		catch (Exception e)
-		{	System.out.println("Graphics context error: " + e); }
-	} // end of paintScreen()
+	} // end of screenUpdate()
 
 	private void gameUpdate() {
-		if (!isPaused && !gameOver)
-			fred.move();
+		engine.tick();
 	}
 
+	private long timedUpdate()
+	// update the game, and return how long it took
+	{
+		long updateStart = System.nanoTime();
+		gameUpdate();
+		long updateTime = System.nanoTime() - updateStart;
+		frameStats.record(FrameStats.Phase.UPDATE, updateTime);
+		return updateTime;
+	} // end of timedUpdate()
+
 	private void printStats() {
 		System.out.println("Frame Count/Loss: " + frameCount + " / " + totalFramesSkipped);
 		System.out.println("Average FPS: " + df.format(averageFPS));
 		System.out.println("Average UPS: " + df.format(averageUPS));
-		System.out.println("Time Spent: " + timeSpentInGame + " secs");
-		System.out.println("Boxes used: " + obs.getNumObstacles());
+		System.out.println("Time Spent: " + engine.getTimeSpent() + " secs");
+		System.out.println("Boxes used: " + engine.getNumObstacles());
+		System.out.println("Input dropped: " + engine.getDroppedInput());
+		System.out.println("Seed: " + engine.getSeed());
 	} // end of printStats()
 
 	private void storeStats() {
 
 		frameCount++;
-		statsInterval += period;
+		long timeNow = System.nanoTime();
+		statsInterval = timeNow - prevStatsTime;	// measured, since frames can overrun the period
 
 		if (statsInterval >= MAX_STATS_INTERVAL) {
-			long timeNow = System.nanoTime();
-			timeSpentInGame = (int) ((timeNow - gameStartTime)/1000000000L);	// ns --> secs
-			wcTop.setTimeSpent( timeSpentInGame );
+			if (updater == null)		// otherwise the updater does it
+				engine.updateTimeSpent();	// reports to wcTop
 
-			long realElapsedTime = timeNow - prevStatsTime;
+			long realElapsedTime = statsInterval;
 			// time since last stats collection
 			totalElapsedTime += realElapsedTime;
 
-			double timingError = ((double)Math.abs((realElapsedTime - statsInterval)) / statsInterval)*100.0;
-
 			totalFramesSkipped += framesSkipped;
 
 			double actualFPS = 0;	// calculate the latest FPS and UPS
 			double actualUPS = 0;
 			if (totalElapsedTime > 0) {
 				actualFPS = (((double)frameCount / totalElapsedTime) * 1000000000L);
-				actualUPS = (((double)(frameCount + totalFramesSkipped) / totalElapsedTime) * 1000000000L);
+				actualUPS = (((double)engine.getTicksSinceStart() / totalElapsedTime) * 1000000000L);
 			}
 
 			// store the latest FPS and UPS
@@ -392,9 +477,7 @@ public class WormPanel extends JPanel implements Runnable{
 			// Comment this section
 			/*			
 			System.out.println(
-					timedf.format((double) statsInterval/1000000000) + " " +
 					timedf.format((double) realElapsedTime/1000000000) + "s " +
-					df.format(timingError) + "% " +
 					frameCount + "c " +
 					framesSkipped + "/" + totalFramesSkipped + " skip; " +
 					df.format(actualFPS) + " " + df.format(averageFPS) + " afps; " + 
@@ -404,7 +487,6 @@ public class WormPanel extends JPanel implements Runnable{
 			
 			framesSkipped = 0;
 			prevStatsTime = timeNow;
-			statsInterval = 0;	// reset
 		}     
 	}	// end of storeStats()
 }
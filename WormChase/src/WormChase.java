@@ -12,7 +12,9 @@ import java.awt.event.WindowListener;
 import javax.swing.JFrame;
 import javax.swing.JTextField;
 
-public class WormChase extends JFrame implements WindowListener{
+import engine.StatusListener;
+
+public class WormChase extends JFrame implements WindowListener, StatusListener{
 
 	private static int DEFAULT_FPS = 80;
 	
@@ -84,10 +86,10 @@ public class WormChase extends JFrame implements WindowListener{
 		if (args.length != 0)
 			fps = Integer.parseInt(args[0]);
 		
-		long period = (long) 1000.0/fps;
-		System.out.println("fps: " + fps + "; period: " + period + " ms");
+		long period = 1000000000L/fps;	// in nanosecs, so 144 FPS isn't rounded to 6 ms
+		System.out.println("fps: " + fps + "; period: " + (period/1000000.0) + " ms");
 		
-		new WormChase(period*1000000L);		// ms --> nanosecs
+		new WormChase(period);
 		
 	}
 	
@@ -3,6 +3,7 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
@@ -13,6 +14,20 @@ import java.text.DecimalFormat;
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 
+import engine.Clock;
+import engine.FramePacer;
+import engine.FrameStats;
+import engine.GameEvents;
+import engine.GameRenderer;
+import engine.GameSnapshot;
+import engine.GameState;
+import engine.GameUpdater;
+import engine.InputRecorder;
+import engine.SpectatorServer;
+import engine.TelemetryWriter;
+import engine.Worm;
+import engine.WormEngine;
+
 public class WormPanel extends JPanel implements Runnable{
 	
 	// record stats ever 1 second (roughly)
@@ -26,7 +41,7 @@ public class WormPanel extends JPanel implements Runnable{
 	private static final int NO_DELAYS_PER_YIELD = 1000;
 
 	// used for gathering statistics
-	private long statsInterval = 0L; 	// in ms
+	private long statsInterval = 0L; 	// in ns
 	private long prevStatsTime;
 	private long totalElapsedTime = 0L;
 	
@@ -38,29 +53,31 @@ public class WormPanel extends JPanel implements Runnable{
 	private double averageUPS = 0.0;
 
 	private WormChase wcTop;
-	private Obstacles obs;
-	private Worm fred;
+	private WormEngine engine;
+	private GameRenderer renderer;
+	private GameUpdater updater;	// null if updating on this thread
+	private GameState renderState = new GameState();
+	private GameState drawnState;	// the state last drawn, for JFR events
 	private Font font;
 	private Object metrics;
 
-	private boolean isPaused;
-	private boolean gameOver;
-	private boolean running;
+	private volatile boolean running;	// also stopped by the event thread
 
-	private int score;
 	private int PWIDTH;
 	private int PHEIGHT;
 
-	private long gameStartTime;
-	private int timeSpentInGame; 	// in seconds
-
 	private long framesSkipped = 0;
 	private long totalFramesSkipped = 0;
 	
 	private DecimalFormat timedf = new DecimalFormat("0.##");	// 2 dp
 	private DecimalFormat df = new DecimalFormat("0.####");		// 4 dp
 	
-	private long period; // period between drawing in ms
+	private long period; // period between drawing in ns
+
+	private FramePacer pacer;
+	private FrameStats frameStats = new FrameStats();	// per-frame phase timings
+	private SpectatorServer spectators;	// null unless -Dwormchase.spectators=<port>
+	private TelemetryWriter telemetry;	// null unless writing per-frame records
 
 	private Graphics dbg;
 
@@ -69,6 +86,7 @@ public class WormPanel extends JPanel implements Runnable{
 	public WormPanel(WormChase wc, long period, int pWidth, int pHeight) {
 		wcTop = wc;
 		this.period = period;
+		pacer = new FramePacer(period);
 		PWIDTH = pWidth;
 		PHEIGHT = pHeight;
 
@@ -79,20 +97,31 @@ public class WormPanel extends JPanel implements Runnable{
 		requestFocus();	// now has focus, so receives key events
 		readyForTermination();
 
-		// create game components
-		obs = new Obstacles(wcTop);
-		fred = new Worm(PWIDTH, PHEIGHT, obs);
+		// create the game state
+		engine = new WormEngine(PWIDTH, PHEIGHT, Clock.SYSTEM, wcTop);
+		GameSnapshot.restoreIfRequested(engine);
+		InputRecorder.recordIfRequested(engine, PWIDTH, PHEIGHT);
+		// -Dwormchase.length=<dots> for a longer worm
+		engine.setMaxWormLength( Integer.getInteger("wormchase.length", Worm.DEFAULT_LENGTH) );
+		spectators = SpectatorServer.startIfRequested(engine);
+		telemetry = TelemetryWriter.createIfRequested();
 
 		addMouseListener( new MouseAdapter() {
 			public void mousePressed(MouseEvent e)
 			{
-				testPress(e.getX(), e.getY());
+				engine.postPress(e.getX(), e.getY());
 			}
 		});
 
 		// set up message font
 		font = new Font("SansSerif", Font.BOLD, 24);
 		metrics = this.getFontMetrics(font);
+		renderer = new GameRenderer(font, PWIDTH, PHEIGHT);
+		renderer.useRasterIfRequested();
+
+		updater = GameUpdater.createIfRequested(engine, period);
+		if ((updater != null) && Boolean.getBoolean("wormchase.interpolate"))
+			renderer.setInterpolation( updater.getPeriod() );
 
 		// initialize timing elements
 		fpsStore = new double[NUM_FPS];
@@ -118,32 +147,16 @@ public class WormPanel extends JPanel implements Runnable{
 		});
 	} // end readyForTermination()
 
-	private void testPress (int x, int y)
-	// is (x,y) near the head or should an obstacle be added?
-	{
-		if (!isPaused && !gameOver) {
-			if (fred.nearHead(x,y)) { 	// was mouse press near the head?
-				gameOver = true;
-				score = (40 - timeSpentInGame) + 40 - obs.getNumObstacles();
-				// hack together a score
-			}
-			else { 	// add an obstacle if possible
-				if (!fred.touchedAt(x,y)) 	// was worm's body not touched?
-					obs.add(x,y);
-			}
-		}
-	} // end of testPress()
-
 	public void resumeGame()
 	// called when the JFrame is activated/ de-iconified
 	{
-		isPaused = false;
+		engine.postPause(false);
 	}
 
 	public void pauseGame()
 	// called when the JFrame is deactivated/ iconified
 	{
-		isPaused = true;
+		engine.postPause(true);
 	}
 
 	public void stopGame() {
@@ -159,25 +172,34 @@ public class WormPanel extends JPanel implements Runnable{
 		int noDelays = 0;
 		long excess = 0L;
 
-		gameStartTime = System.nanoTime();
-		prevStatsTime = gameStartTime;
-		beforeTime = gameStartTime;
+		engine.startGame();
+		prevStatsTime = System.nanoTime();
+		beforeTime = prevStatsTime;
 
 		running = true;
+		if (updater != null) {
+			updater.setStats(frameStats);
+			updater.start();
+		}
 		while(running) {
-			gameUpdate();
+			long updateTime = 0L;
+			if (updater == null)
+				updateTime += timedUpdate();
+			long renderStart = System.nanoTime();
 			gameRender();
+			long presentStart = System.nanoTime();
 			paintScreen();
 
 			afterTime = System.nanoTime();
+			long renderTime = presentStart - renderStart;
+			long presentTime = afterTime - presentStart;
+			frameStats.record(FrameStats.Phase.RENDER, renderTime);
+			frameStats.record(FrameStats.Phase.PRESENT, presentTime);
 			timeDiff = afterTime - beforeTime;
 			sleepTime = (period - timeDiff) - overSleepTime;
 
 			if (sleepTime > 0) { 	// some time left in this cycle
-				try {
-					Thread.sleep(sleepTime/10000000);	// nano - ms
-				}
-				catch (InterruptedException ex) {}
+				pacer.sleep(sleepTime);
 				overSleepTime = (System.nanoTime() - afterTime) - sleepTime;
 			}
 			else { 		// sleepTime <= 0; frame took longer than the period
@@ -190,28 +212,57 @@ public class WormPanel extends JPanel implements Runnable{
 				}
 			}
 
-			beforeTime = System.nanoTime();
+			long frameStart = System.nanoTime();
+			long frameTime = frameStart - beforeTime;
+			frameStats.record(FrameStats.Phase.FRAME, frameTime);
+			beforeTime = frameStart;
+			pacer.frameStarted(beforeTime);
 
 			/* If frame animation is taking too long, update the game state
 			 * without rendering it, to get the updates/sec nearer to the
 			 * required FPS. 
 			 */
+			GameEvents.FrameSkip skipEv = new GameEvents.FrameSkip();
+			skipEv.begin();
 			int skips = 0;
-			while ((excess > period) && (skips < MAX_FRAME_SKIPS)) {
+			while ((updater == null) && (excess > period) && (skips < MAX_FRAME_SKIPS)) {
 				excess -= period;
-				gameUpdate();	// update state but don't render.
+				updateTime += timedUpdate();	// update state but don't render.
 				skips++;
 			}
+			skipEv.end();
+			if ((skips > 0) && skipEv.shouldCommit()) {
+				skipEv.set(engine.getTickCount(), engine.getWorm().getLength(),
+										engine.getNumObstacles());
+				skipEv.setSkips(skips);
+				skipEv.commit();
+			}
 			framesSkipped += skips;
+			frameStats.framesSkipped(skips);
+			if ((telemetry != null) && (drawnState != null))
+				telemetry.record(frameCount, frameStart, updateTime, renderTime, presentTime,
+									frameTime, skips, drawnState.getTickCount());
 
 			storeStats();
 		}
 
+		if (updater != null)
+			updater.stop();
+		engine.finishRecording();
+		GameSnapshot.saveIfRequested(engine);
+		if (spectators != null)
+			spectators.close();
+		if (telemetry != null)
+			telemetry.close();
 		printStats();
+		pacer.printStats();
+		frameStats.printStats();
 		System.exit(0);		// window disappears
 	}	// end of run()
 
 	private void gameRender() {
+		GameEvents.Render ev = new GameEvents.Render();
+		ev.begin();
 		if (dbImage == null) {
 			dbImage = createImage(PWIDTH, PHEIGHT);
 			if (dbImage == null) {
@@ -222,87 +273,101 @@ public class WormPanel extends JPanel implements Runnable{
 				dbg = dbImage.getGraphics();
 		}
 		
-		// clear the background
-		dbg.setColor(Color.white);
-		dbg.fillRect(0, 0, PWIDTH, PWIDTH);
-		
-		dbg.setColor(Color.blue);
-		dbg.setFont(font);
-		
-		// report average FPS and UPS at top left
-		dbg.drawString("Average FPS/UPS: " + df.format(averageFPS) +
-				", " + df.format(averageUPS), 20, 25);
-		
-		// report time used and boxes used at bottom left
-		dbg.drawString("Time spent: " + timeSpentInGame + " secs", 10, PHEIGHT-15);
-		dbg.drawString("Boxes used: " + obs.getNumObstacles(), 260, PHEIGHT-15);
-		
-		dbg.setColor(Color.black);
-		
-		// draw game elements: the obstacles and the worm
-		obs.draw(dbg);
-		fred.draw(dbg);
-		
-		if(gameOver)
-			gameOverMessage(dbg);
+		// draw the latest update, or a snapshot of the engine now
+		GameState state;
+		if (updater != null)
+			state = updater.latestState();
+		else {
+			engine.snapshot(renderState);
+			state = renderState;
+		}
 
-	} // end of gameRender()
+		renderer.renderDamage(dbg, state, averageFPS, averageUPS);
+		drawnState = state;
 
-	private void gameOverMessage(Graphics g) {
-		g.drawString("YOU CAUGHT THE WORM!", PWIDTH/2-10, PHEIGHT/2-10);
-		g.drawString("YOU SCORED " + score + " POINTS!", PWIDTH/2-10, PHEIGHT/2+10);
-	}
+		ev.setState(state);
+		ev.commit();
+	} // end of gameRender()
 
-	// use active rendering to put the buffered image on-screen
+	// use active rendering to put the changed parts of the buffered image on-screen
 	private void paintScreen() {
+		GameEvents.Present ev = new GameEvents.Present();
+		ev.begin();
 		Graphics g;
 		try {
 			g = this.getGraphics();
-			if ((g != null) && (dbImage != null))
-				g.drawImage(dbImage, 0, 0, null);
+			if ((g != null) && (dbImage != null)) {
+				for (int i = 0; i < renderer.getNumDamage(); i++) {
+					Rectangle r = renderer.getDamage(i);
+					g.drawImage(dbImage, r.x, r.y, r.x+r.width, r.y+r.height,
+										r.x, r.y, r.x+r.width, r.y+r.height, null);
+				}
+			}
 			Toolkit.getDefaultToolkit().sync(); // sync the display on some systems
 			g.dispose();
 		}
 		catch (Exception e)
 		{	System.out.println("Graphics context error: " + e); }
+
+		if (drawnState != null) {
+			ev.setState(drawnState);
+			ev.commit();
+		}
 	} // end of paintScreen()
 
+	public void paintComponent(Graphics g)
+	// called when the window has been exposed, since paintScreen() only draws changes
+	{
+		super.paintComponent(g);
+		if (dbImage != null)
+			g.drawImage(dbImage, 0, 0, null);
+	}
+
 	private void gameUpdate() {
-		if (!isPaused && !gameOver)
-			fred.move();
+		engine.tick();
 	}
 
+	private long timedUpdate()
+	// update the game, and return how long it took
+	{
+		long updateStart = System.nanoTime();
+		gameUpdate();
+		long updateTime = System.nanoTime() - updateStart;
+		frameStats.record(FrameStats.Phase.UPDATE, updateTime);
+		return updateTime;
+	} // end of timedUpdate()
+
 	private void printStats() {
 		System.out.println("Frame Count/Loss: " + frameCount + " / " + totalFramesSkipped);
 		System.out.println("Average FPS: " + df.format(averageFPS));
 		System.out.println("Average UPS: " + df.format(averageUPS));
-		System.out.println("Time Spent: " + timeSpentInGame + " secs");
-		System.out.println("Boxes used: " + obs.getNumObstacles());
+		System.out.println("Time Spent: " + engine.getTimeSpent() + " secs");
+		System.out.println("Boxes used: " + engine.getNumObstacles());
+		System.out.println("Input dropped: " + engine.getDroppedInput());
+		System.out.println("Seed: " + engine.getSeed());
 	} // end of printStats()
 
 	private void storeStats() {
 
 		frameCount++;
-		statsInterval += period;
+		long timeNow = System.nanoTime();
+		statsInterval = timeNow - prevStatsTime;	// measured, since frames can overrun the period
 
 		if (statsInterval >= MAX_STATS_INTERVAL) {
-			long timeNow = System.nanoTime();
-			timeSpentInGame = (int) ((timeNow - gameStartTime)/1000000000L);	// ns --> secs
-			wcTop.setTimeSpent( timeSpentInGame );
+			if (updater == null)		// otherwise the updater does it
+				engine.updateTimeSpent();	// reports to wcTop
 
-			long realElapsedTime = timeNow - prevStatsTime;
+			long realElapsedTime = statsInterval;
 			// time since last stats collection
 			totalElapsedTime += realElapsedTime;
 
-			double timingError = ((double)Math.abs((realElapsedTime - statsInterval)) / statsInterval)*100.0;
-
 			totalFramesSkipped += framesSkipped;
 
 			double actualFPS = 0;	// calculate the latest FPS and UPS
 			double actualUPS = 0;
 			if (totalElapsedTime > 0) {
 				actualFPS = (((double)frameCount / totalElapsedTime) * 1000000000L);
-				actualUPS = (((double)(frameCount + totalFramesSkipped) / totalElapsedTime) * 1000000000L);
+				actualUPS = (((double)engine.getTicksSinceStart() / totalElapsedTime) * 1000000000L);
 			}
 
 			// store the latest FPS and UPS
@@ -329,9 +394,7 @@ public class WormPanel extends JPanel implements Runnable{
 			// Comment this section
 /*			
 			System.out.println(
-					timedf.format((double) statsInterval/1000000000) + " " +
 					timedf.format((double) realElapsedTime/1000000000) + "s " +
-					df.format(timingError) + "% " +
 					frameCount + "c " +
 					framesSkipped + "/" + totalFramesSkipped + " skip; " +
 					df.format(actualFPS) + " " + df.format(averageFPS) + " afps; " + 
@@ -341,7 +404,6 @@ public class WormPanel extends JPanel implements Runnable{
 			
 			framesSkipped = 0;
 			prevStatsTime = timeNow;
-			statsInterval = 0;	// reset
 		}     
 	}	// end of storeStats()
 }
@@ -0,0 +1,17 @@
+package engine;
+
+/* The time source used by WormEngine. The front-ends use the
+ * system clock; headless runs can plug in a ManualClock so that
+ * game time only moves when the caller says so.
+ */
+public interface Clock {
+
+	Clock SYSTEM = new Clock() {
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+
+	long nanoTime();	// in ns, like System.nanoTime()
+
+}
@@ -0,0 +1,108 @@
+package engine;
+
+import java.util.Arrays;
+
+/* A grid of DOTSIZE cells over the panel, which wraps around at the
+ * panel edges as the worm does, bucketing the slots of a ring of dots
+ * (a Worm's or a GameState's) by where their dots are. Each bucket's
+ * slots are chained oldest first: bucketFirst[] holds the oldest slot
+ * in a bucket (or -1), and nextInCell[] the next newer slot in the
+ * same bucket (or -1). A new head goes on the end of its chain, and a
+ * tail being dropped is always the oldest dot of all, so it is the
+ * first in its chain; both take constant time, however many dots
+ * there are.
+ *
+ * There are no more buckets than the ring has slots, so a short worm
+ * (e.g. one of a WormSwarm's) doesn't pay for a whole panel of cells.
+ * A cell's bucket is its index masked to the no. of buckets, so when
+ * there are fewer buckets than cells, one bucket holds several cells'
+ * dots, and a reader must check the dots it finds.
+ */
+class DotGrid {
+
+	private static final int DOTSIZE = Worm.DOTSIZE;
+
+	final int numCols, numRows;
+	private int[] bucketFirst, bucketLast;
+	private int bucketMask;
+	private int[] nextInCell;		// one per slot in the ring
+
+	DotGrid(int pWidth, int pHeight, int capacity) {
+		numCols = Math.max(1, (pWidth + DOTSIZE-1) / DOTSIZE);
+		numRows = Math.max(1, (pHeight + DOTSIZE-1) / DOTSIZE);
+		setCapacity(capacity);
+	} // end of DotGrid()
+
+	void setCapacity(int capacity)
+	/* make room for a ring of capacity slots (a power of 2), with up to
+	   as many buckets; the grid is emptied */
+	{
+		int numCells = numCols * numRows;
+		int numBuckets = (numCells <= 1) ? 1 : Integer.highestOneBit(numCells-1) << 1;
+		numBuckets = Math.min(numBuckets, capacity);
+		bucketFirst = new int[numBuckets];
+		bucketLast = new int[numBuckets];
+		bucketMask = numBuckets-1;
+		nextInCell = new int[capacity];
+		clear();
+	} // end of setCapacity()
+
+	void clear() {
+		Arrays.fill(bucketFirst, -1);
+		Arrays.fill(bucketLast, -1);
+	}
+
+	int cellIndex(int col, int row)
+	// wraparound the grid, so off-panel positions still have a cell
+	{
+		return Math.floorMod(row, numRows)*numCols + Math.floorMod(col, numCols);
+	}
+
+	private int bucket(int x, int y)
+	// the bucket of the cell holding (x,y)
+	{
+		return cellIndex(Math.floorDiv(x, DOTSIZE), Math.floorDiv(y, DOTSIZE)) & bucketMask;
+	}
+
+	void add(int slot, int x, int y)
+	// add the dot at (x,y) in slot to the end of its bucket's chain
+	{
+		int b = bucket(x, y);
+		nextInCell[slot] = -1;
+		if (bucketLast[b] == -1)
+			bucketFirst[b] = slot;
+		else
+			nextInCell[ bucketLast[b] ] = slot;
+		bucketLast[b] = slot;
+	} // end of add()
+
+	void removeOldest(int slot, int x, int y)
+	// remove the oldest dot, at (x,y) in slot, from the front of its bucket's chain
+	{
+		int b = bucket(x, y);
+		bucketFirst[b] = nextInCell[slot];
+		if (bucketFirst[b] == -1)
+			bucketLast[b] = -1;
+	} // end of removeOldest()
+
+	int first(int col, int row)
+	/* the oldest slot in the cell's bucket, or -1; the bucket may also
+	   hold other cells' dots */
+	{
+		return bucketFirst[ cellIndex(col, row) & bucketMask ];
+	}
+
+	int next(int slot)
+	// the next newer slot in the same bucket, or -1
+	{
+		return nextInCell[slot];
+	}
+
+	boolean inCell(int x, int y, int col, int row)
+	// is the dot at (x,y) in the cell, rather than another in the same bucket?
+	{
+		return cellIndex(Math.floorDiv(x, DOTSIZE), Math.floorDiv(y, DOTSIZE)) ==
+				cellIndex(col, row);
+	}
+
+}
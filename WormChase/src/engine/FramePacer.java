@@ -0,0 +1,120 @@
+package engine;
+
+import java.text.DecimalFormat;
+import java.util.concurrent.locks.LockSupport;
+
+/* Waits out the rest of each frame period for the game loop, and
+ * records how far each frame's start time strays from the period
+ * (its jitter). The strategy trades CPU use for accuracy:
+ *
+ *   SLEEP       Thread.sleep(); cheapest, but often 1-2 ms late
+ *   SLEEP_SPIN  sleep until SPIN_TIME before the deadline, then spin
+ *   PARK        LockSupport.parkNanos() until the deadline
+ *   SPIN        spin until the deadline; most accurate, uses a whole core
+ *
+ * The strategy is chosen with -Dwormchase.pacer=sleep|sleepspin|park|spin
+ * (sleepspin by default).
+ */
+public class FramePacer {
+
+	public enum Strategy { SLEEP, SLEEP_SPIN, PARK, SPIN }
+
+	// how long before the deadline SLEEP_SPIN stops sleeping
+	private static final long SPIN_TIME = 2000000L;	// 2 ms
+
+	private long period;	// in ns
+	private Strategy strategy;
+
+	// jitter statistics, in ns
+	private long prevFrameStart = -1L;
+	private long numFrames = 0;
+	private double totalJitter = 0.0;
+	private double totalJitterSq = 0.0;
+	private long maxJitter = 0L;
+
+	public FramePacer(long period, Strategy strategy) {
+		this.period = period;
+		this.strategy = strategy;
+	}
+
+	public FramePacer(long period) {
+		this(period, strategyProperty());
+	}
+
+	private static Strategy strategyProperty() {
+		String name = System.getProperty("wormchase.pacer", "sleepspin");
+		if (name.equalsIgnoreCase("sleep"))
+			return Strategy.SLEEP;
+		else if (name.equalsIgnoreCase("park"))
+			return Strategy.PARK;
+		else if (name.equalsIgnoreCase("spin"))
+			return Strategy.SPIN;
+		else
+			return Strategy.SLEEP_SPIN;
+	} // end of strategyProperty()
+
+	public void sleep(long sleepTime)
+	// wait for sleepTime ns, using the pacer's strategy
+	{
+		long deadline = System.nanoTime() + sleepTime;
+		switch (strategy) {
+			case SLEEP:
+				sleepNanos(sleepTime);
+				break;
+			case SLEEP_SPIN:
+				if (sleepTime > SPIN_TIME)
+					sleepNanos(sleepTime - SPIN_TIME);
+				spinUntil(deadline);
+				break;
+			case PARK:
+				long timeLeft;
+				while ((timeLeft = deadline - System.nanoTime()) > 0)
+					LockSupport.parkNanos(timeLeft);	// may return early
+				break;
+			case SPIN:
+				spinUntil(deadline);
+				break;
+		}
+	} // end of sleep()
+
+	private void sleepNanos(long nanos) {
+		try {
+			Thread.sleep(nanos/1000000L, (int) (nanos%1000000L));	// ns --> ms + ns
+		}
+		catch (InterruptedException ex) {}
+	}
+
+	private void spinUntil(long deadline) {
+		while (System.nanoTime() - deadline < 0)
+			Thread.onSpinWait();
+	}
+
+	public void frameStarted(long timeNow)
+	// record the jitter of a frame starting at timeNow
+	{
+		if (prevFrameStart >= 0) {
+			long jitter = Math.abs((timeNow - prevFrameStart) - period);
+			numFrames++;
+			totalJitter += jitter;
+			totalJitterSq += (double) jitter * jitter;
+			if (jitter > maxJitter)
+				maxJitter = jitter;
+		}
+		prevFrameStart = timeNow;
+	} // end of frameStarted()
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	public void printStats() {
+		DecimalFormat df = new DecimalFormat("0.###");		// 3 dp
+		double meanJitter = (numFrames > 0) ? totalJitter/numFrames : 0.0;
+		double sdJitter = (numFrames > 0) ?
+				Math.sqrt(Math.max(0.0, totalJitterSq/numFrames - meanJitter*meanJitter)) : 0.0;
+		System.out.println("Pacing: " + strategy + "; jitter mean/sd/max: " +
+				df.format(meanJitter/1000000.0) + " / " + df.format(sdJitter/1000000.0) +
+				" / " + df.format(maxJitter/1000000.0) + " ms");
+	} // end of printStats()
+
+}
@@ -0,0 +1,87 @@
+package engine;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+
+/* Times every frame of the game loop, phase by phase, in Histograms,
+ * so a few slow frames show up in the percentiles instead of being
+ * averaged away. The phases are the game update, drawing the frame,
+ * getting it onto the screen, and the whole frame from start to start.
+ * Frames skipped to catch up on updates are counted too, along with
+ * how many bursts of skipping there were and the longest one.
+ *
+ * Each phase must only be recorded by one thread (the updates may come
+ * from a GameUpdater's thread), and printStats() should be called once
+ * they have all stopped.
+ */
+public class FrameStats {
+
+	public enum Phase { UPDATE, RENDER, PRESENT, FRAME }
+
+	private Histogram[] times;
+
+	private long framesSkipped = 0;
+	private long skipBursts = 0;
+	private int maxBurst = 0;
+
+	public FrameStats() {
+		Phase[] phases = Phase.values();
+		times = new Histogram[phases.length];
+		for (int i = 0; i < phases.length; i++)
+			times[i] = new Histogram();
+	}
+
+	public void record(Phase phase, long time)
+	// record a time (in ns) taken by one phase
+	{
+		times[ phase.ordinal() ].record(time);
+	}
+
+	public void framesSkipped(int skips)
+	// record a burst of skips frames updated without being drawn
+	{
+		if (skips > 0) {
+			framesSkipped += skips;
+			skipBursts++;
+			if (skips > maxBurst)
+				maxBurst = skips;
+		}
+	} // end of framesSkipped()
+
+	public Histogram getTimes(Phase phase) {
+		return times[ phase.ordinal() ];
+	}
+
+	public long getFramesSkipped() {
+		return framesSkipped;
+	}
+
+	public void printStats() {
+		printStats(System.out);
+	}
+
+	public void printStats(PrintStream out)
+	// a summary line for each phase, then their full distributions
+	{
+		DecimalFormat df = new DecimalFormat("0.###");		// 3 dp
+		Phase[] phases = Phase.values();
+		for (int i = 0; i < phases.length; i++) {
+			Histogram h = times[i];
+			out.println(phases[i] + " (" + h.getCount() + "); p50/p99/p99.9/max: " +
+					df.format(h.valueAtPercentile(50.0)/1000000.0) + " / " +
+					df.format(h.valueAtPercentile(99.0)/1000000.0) + " / " +
+					df.format(h.valueAtPercentile(99.9)/1000000.0) + " / " +
+					df.format(h.getMax()/1000000.0) + " ms");
+		}
+		out.println("Frames skipped: " + framesSkipped + " in " + skipBursts +
+					" bursts; longest burst: " + maxBurst);
+
+		for (int i = 0; i < phases.length; i++) {
+			if (times[i].getCount() > 0) {
+				out.println(phases[i] + " distribution:");
+				times[i].printDistribution(out, 1000000.0, "ms");
+			}
+		}
+	} // end of printStats()
+
+}
@@ -0,0 +1,89 @@
+package engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/* Java Flight Recorder events for the phases of the game loop, so a
+ * recording shows which phase of a slow frame took the time, next to
+ * the GC, safepoint and lock events JFR records anyway. Each event is
+ * timed with begin() and commit(), and carries the game's tick number,
+ * worm length and obstacle count at the time.
+ *
+ * Start a recording with, e.g.
+ *   java -XX:StartFlightRecording=filename=wormchase.jfr WormChase 80
+ * and look for the events in the WormChase category. When JFR is not
+ * recording, the events cost next to nothing.
+ */
+public class GameEvents {
+
+	@Category("WormChase")
+	@StackTrace(false)
+	public static abstract class GameEvent extends Event {
+		@Label("Tick")
+		long tick;
+
+		@Label("Worm Length")
+		int wormLength;
+
+		@Label("Obstacles")
+		int obstacles;
+
+		public void set(long tick, int wormLength, int obstacles) {
+			this.tick = tick;
+			this.wormLength = wormLength;
+			this.obstacles = obstacles;
+		}
+
+		public void setState(GameState state) {
+			set(state.getTickCount(), state.getNumDots(), state.getNumBoxes());
+		}
+	} // end of GameEvent class
+
+	@Name("wormchase.Tick")
+	@Label("Tick")
+	@Description("One game update")
+	public static class Tick extends GameEvent {}
+
+	@Name("wormchase.Render")
+	@Label("Render")
+	@Description("Drawing a frame into the back buffer")
+	public static class Render extends GameEvent {}
+
+	@Name("wormchase.Present")
+	@Label("Present")
+	@Description("Getting a drawn frame onto the screen")
+	public static class Present extends GameEvent {}
+
+	@Name("wormchase.FrameSkip")
+	@Label("Frame Skip")
+	@Description("A burst of updates run without drawing, to catch up")
+	public static class FrameSkip extends GameEvent {
+		@Label("Frames Skipped")
+		int skips;
+
+		public void setSkips(int skips) {
+			this.skips = skips;
+		}
+	}
+
+	@Name("wormchase.ObstacleAdd")
+	@Label("Obstacle Add")
+	@Description("A box added where the player clicked")
+	public static class ObstacleAdd extends GameEvent {
+		@Label("X")
+		int x;
+
+		@Label("Y")
+		int y;
+
+		public void setPosition(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package engine;
+
+/* The worm's random numbers. This is the same SplitMix64 generator
+ * as java.util.SplittableRandom, and gives the same numbers for the
+ * same seed, so recorded games still replay; but its state (the seed
+ * and gamma) can be read and set, so a GameSnapshot can save it and
+ * carry on with the same numbers after a restart.
+ *
+ * Like SplittableRandom, a GameRandom must only be used by one thread;
+ * split() makes an independent one for another worm or thread.
+ */
+public class GameRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long seed;
+	private final long gamma;	// always odd
+
+	GameRandom(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	public GameRandom(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	public GameRandom() {
+		this( mix64(System.nanoTime()) );
+	}
+
+	public GameRandom split()
+	// a new generator, whose numbers don't overlap this one's
+	{
+		return new GameRandom(nextLong(), mixGamma(nextSeed()));
+	}
+
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	public int nextInt() {
+		return mix32(nextSeed());
+	}
+
+	public int nextInt(int bound)
+	// a number from 0 to bound-1, drawn as SplittableRandom does
+	{
+		int r = nextInt();
+		int m = bound - 1;
+		if ((bound & m) == 0)	// a power of 2
+			r &= m;
+		else {	// reject the top values that would favour the low numbers
+			for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1)
+				;
+		}
+		return r;
+	} // end of nextInt()
+
+	long getSeed() {
+		return seed;
+	}
+
+	long getGamma() {
+		return gamma;
+	}
+
+	private long nextSeed() {
+		return (seed += gamma);
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	private static long mixGamma(long z)
+	// an odd gamma with enough 0-1 changes in its bits
+	{
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	} // end of mixGamma()
+
+}
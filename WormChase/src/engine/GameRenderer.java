@@ -0,0 +1,346 @@
+package engine;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.text.DecimalFormat;
+
+/* Draws a GameState into a Graphics context: the background, the
+ * status text, the obstacles and the worm, and the game over message.
+ * Used by both WormPanels for their back buffer, and by the benchmarks
+ * to draw into an offscreen image.
+ *
+ * renderDamage() only redraws the parts of a back buffer that have
+ * changed since the last frame drawn into it: the dots the worm has
+ * gained and lost, its old and new heads, new boxes, and any status
+ * line whose value changed. Most frames touch only a few hundred
+ * pixels this way, instead of the whole panel.
+ *
+ * With a RasterRenderer (e.g. -Dwormchase.renderer=raster), the
+ * background, boxes and worm are drawn into its image on all cores,
+ * and copied in one go; every frame is then drawn in full, and the
+ * status lines go on top of the worm.
+ */
+public class GameRenderer {
+
+	// most damaged areas tracked before giving up and redrawing everything
+	private static final int MAX_DAMAGE = 64;
+
+	// the status lines, as drawn by drawStatus()
+	private static final int TOP_STATUS_HEIGHT = 35;
+	private static final int BOTTOM_STATUS_HEIGHT = 45;
+
+	private static final int DOTSIZE = Worm.DOTSIZE;
+	private static final int BOX_LENGTH = Obstacles.BOX_LENGTH;
+
+	private Font font;
+	private SpriteCache sprites;
+	private ObstacleLayer obsLayer;
+	private RasterRenderer raster = null;	// draws the boxes and worm, if not null
+	private int pWidth;
+	private int pHeight;
+
+	private DecimalFormat df = new DecimalFormat("0.####");		// 4 dp
+
+	/* the status lines, redrawn into their images only when the
+	   values in them change */
+	private TextImage fpsText, timeText, boxesText;
+	private double hudFPS = -1.0, hudUPS = -1.0;
+	private int hudTimeSpent = -1;
+	private int hudNumBoxes = -1;
+
+	private long interpPeriod = 0L;	// the update period (ns) if interpolating, or 0
+
+	// the areas changed by the last renderDamage()
+	private Rectangle[] damage;
+	private int numDamage = 0;
+	private int damageArea;
+
+	/* what the last renderDamage() drew: the worm's dot numbers (as in
+	   Worm.getNumAdded()), and only the dots that can be damaged next
+	   time, its first MAX_DAMAGE tail dots and its last two */
+	private boolean hasPrevFrame = false;
+	private long prevWormId;
+	private long prevFirstDot, prevDotsEnd;
+	private int[] prevTailXs = new int[MAX_DAMAGE];
+	private int[] prevTailYs = new int[MAX_DAMAGE];
+	private int prevNumTail;
+	private int[] prevHeadXs = new int[2];
+	private int[] prevHeadYs = new int[2];
+	private int prevNumHead;
+	private int prevDrawnHeadX, prevDrawnHeadY;	// where the head was drawn, maybe interpolated
+	private int prevNumBoxes;
+	private boolean prevGameOver;
+	private double prevFPS, prevUPS;
+	private int prevTimeSpent;
+
+	public GameRenderer(Font font, int pWidth, int pHeight) {
+		this.font = font;
+		sprites = new SpriteCache();
+		obsLayer = new ObstacleLayer(pWidth, pHeight);
+		fpsText = new TextImage(font, Color.blue);
+		timeText = new TextImage(font, Color.blue);
+		boxesText = new TextImage(font, Color.blue);
+		this.pWidth = pWidth;
+		this.pHeight = pHeight;
+
+		damage = new Rectangle[MAX_DAMAGE];
+		for (int i = 0; i < MAX_DAMAGE; i++)
+			damage[i] = new Rectangle();
+	} // end of GameRenderer()
+
+	public void setInterpolation(long period)
+	/* draw the worm's head part of the way between its last two
+	   positions, according to how much of the update period has
+	   passed since the state was made; 0 turns this off */
+	{
+		interpPeriod = period;
+	}
+
+	public void setRaster(RasterRenderer raster)
+	// draw the background, boxes and worm with raster; null goes back to Java2D
+	{
+		this.raster = raster;
+	}
+
+	public void useRasterIfRequested()
+	// use a RasterRenderer if the wormchase.renderer property is "raster"
+	{
+		if ("raster".equals(System.getProperty("wormchase.renderer"))) {
+			System.out.println("Drawing with a RasterRenderer");
+			setRaster( new RasterRenderer(pWidth, pHeight) );
+		}
+	} // end of useRasterIfRequested()
+
+	public void render(Graphics g, GameState state, double averageFPS, double averageUPS) {
+		render(g, state, averageFPS, averageUPS, headAlpha(state));
+	}
+
+	private void render(Graphics g, GameState state, double averageFPS, double averageUPS,
+							double alpha) {
+		drawBackground(g, state, alpha);
+		drawStatus(g, state, averageFPS, averageUPS);
+		drawGame(g, state, alpha);
+	} // end of render()
+
+	public void renderDamage(Graphics g, GameState state, double averageFPS, double averageUPS)
+	/* Redraw only what has changed since the last call, which must
+	   have drawn into the same image. The changed areas are left in
+	   getDamage(), so only they need to be copied to the screen. */
+	{
+		double alpha = headAlpha(state);	// the same for the damage and all the areas
+		if ((raster != null) || !findDamage(state, averageFPS, averageUPS, alpha)) {	// too much has changed
+			render(g, state, averageFPS, averageUPS, alpha);
+			numDamage = 0;
+			addDamage(0, 0, pWidth, pHeight);
+		}
+		else {
+			obsLayer.update(state.getObstacles(), state.getNumBoxes());
+			for (int i = 0; i < numDamage; i++)
+				renderArea(g, state, damage[i], averageFPS, averageUPS, alpha);
+			g.setClip(null);
+		}
+		rememberFrame(state, averageFPS, averageUPS, alpha);
+	} // end of renderDamage()
+
+	private void renderArea(Graphics g, GameState state, Rectangle area,
+								double averageFPS, double averageUPS, double alpha)
+	// redraw only area, skipping whatever can't be in it
+	{
+		g.setClip(area);
+		obsLayer.draw(g);
+
+		if ((area.y < TOP_STATUS_HEIGHT) ||
+			(area.y + area.height > pHeight-BOTTOM_STATUS_HEIGHT))
+			drawStatus(g, state, averageFPS, averageUPS);
+
+		state.drawWorm(g, alpha, area, sprites);
+		// the game over message is never redrawn here, since it forces a full redraw
+	} // end of renderArea()
+
+	private boolean findDamage(GameState state, double averageFPS, double averageUPS,
+								double alpha)
+	// collect the changed areas; return false if a full redraw is needed
+	{
+		numDamage = 0;
+		damageArea = 0;
+		if (!hasPrevFrame || (state.isGameOver() != prevGameOver))
+			return false;
+
+		// the status lines
+		if ((averageFPS != prevFPS) || (averageUPS != prevUPS))
+			addDamage(0, 0, pWidth, TOP_STATUS_HEIGHT);
+		if ((state.getTimeSpent() != prevTimeSpent) || (state.getNumBoxes() != prevNumBoxes))
+			addDamage(0, pHeight-BOTTOM_STATUS_HEIGHT, pWidth, BOTTOM_STATUS_HEIGHT);
+
+		// the new boxes
+		Obstacles obs = state.getObstacles();
+		for (int i = prevNumBoxes; i < state.getNumBoxes(); i++) {
+			if (!addDamage(obs.getBoxX(i), obs.getBoxY(i), BOX_LENGTH, BOX_LENGTH))
+				return false;
+		}
+
+		return findWormDamage(state, alpha) && (damageArea <= pWidth*pHeight/4);
+	} // end of findDamage()
+
+	private boolean findWormDamage(GameState state, double alpha)
+	/* The worm has lost some dots from its tail and gained some at
+	   its head, which its dot numbers say, without comparing all the
+	   dots. Damage the lost and gained ones, the last two dots of both
+	   the old and new worm, for the head's change of color, and where
+	   the head was and will be drawn, since an interpolated head on a
+	   diagonal step goes outside its dots. */
+	{
+		if (state.getWormId() != prevWormId)
+			return false;	// a different worm
+		long lost = state.getFirstDot() - prevFirstDot;
+		if ((lost < 0) || (lost > prevNumTail) || (state.getDotsEnd() < prevDotsEnd))
+			return false;
+
+		for (int i = 0; i < lost; i++) {
+			if (!addDamage(prevTailXs[i], prevTailYs[i], DOTSIZE, DOTSIZE))
+				return false;
+		}
+		for (int i = 0; i < prevNumHead; i++) {
+			if (!addDamage(prevHeadXs[i], prevHeadYs[i], DOTSIZE, DOTSIZE))
+				return false;
+		}
+		int numDots = state.getNumDots();
+		int numKept = (int) (prevDotsEnd - state.getFirstDot());	// the old dots still there
+		for (int i = Math.max(0, Math.min(numKept, numDots-2)); i < numDots; i++) {
+			if (!addDamage(state.getDotX(i), state.getDotY(i), DOTSIZE, DOTSIZE))
+				return false;
+		}
+		if (interpPeriod > 0) {
+			if ((prevNumHead > 0) &&
+				!addDamage(prevDrawnHeadX, prevDrawnHeadY, DOTSIZE, DOTSIZE))
+				return false;
+			if ((numDots > 0) &&
+				!addDamage(state.getHeadX(alpha), state.getHeadY(alpha), DOTSIZE, DOTSIZE))
+				return false;
+		}
+		return true;
+	} // end of findWormDamage()
+
+	private boolean addDamage(int x, int y, int w, int h)
+	// return false if there are too many damaged areas to track
+	{
+		if (numDamage == MAX_DAMAGE)
+			return false;
+		damage[numDamage++].setBounds(x, y, w, h);
+		damageArea += w*h;
+		return true;
+	}
+
+	private void rememberFrame(GameState state, double averageFPS, double averageUPS,
+								double alpha) {
+		int numDots = state.getNumDots();
+		prevWormId = state.getWormId();
+		prevFirstDot = state.getFirstDot();
+		prevDotsEnd = state.getDotsEnd();
+		prevNumTail = Math.min(numDots, MAX_DAMAGE);
+		for (int i = 0; i < prevNumTail; i++) {
+			prevTailXs[i] = state.getDotX(i);
+			prevTailYs[i] = state.getDotY(i);
+		}
+		prevNumHead = Math.min(numDots, 2);
+		for (int i = 0; i < prevNumHead; i++) {
+			prevHeadXs[i] = state.getDotX(numDots - prevNumHead + i);
+			prevHeadYs[i] = state.getDotY(numDots - prevNumHead + i);
+		}
+		if (numDots > 0) {
+			prevDrawnHeadX = state.getHeadX(alpha);
+			prevDrawnHeadY = state.getHeadY(alpha);
+		}
+		prevNumBoxes = state.getNumBoxes();
+		prevGameOver = state.isGameOver();
+		prevTimeSpent = state.getTimeSpent();
+		prevFPS = averageFPS;
+		prevUPS = averageUPS;
+		hasPrevFrame = true;
+	} // end of rememberFrame()
+
+	public SpriteCache getSprites() {
+		return sprites;
+	}
+
+	public int getNumDamage() {
+		return numDamage;
+	}
+
+	public Rectangle getDamage(int i) {
+		return damage[i];
+	}
+
+	public void drawBackground(Graphics g, GameState state) {
+		drawBackground(g, state, headAlpha(state));
+	}
+
+	private void drawBackground(Graphics g, GameState state, double alpha)
+	/* clear the background and draw the obstacles, in one image copy;
+	   a RasterRenderer draws the worm here too */
+	{
+		if (raster != null) {
+			raster.render(state, alpha);
+			g.drawImage(raster.getImage(), 0, 0, null);
+		}
+		else {
+			obsLayer.update(state.getObstacles(), state.getNumBoxes());
+			obsLayer.draw(g);
+		}
+	} // end of drawBackground()
+
+	public void drawStatus(Graphics g, GameState state, double averageFPS, double averageUPS) {
+		// report average FPS and UPS at top left
+		if ((averageFPS != hudFPS) || (averageUPS != hudUPS)) {
+			fpsText.setText("Average FPS/UPS: " + df.format(averageFPS) +
+					", " + df.format(averageUPS));
+			hudFPS = averageFPS;
+			hudUPS = averageUPS;
+		}
+		fpsText.draw(g, 20, 25);
+
+		// report time used and boxes used at bottom left
+		if (state.getTimeSpent() != hudTimeSpent) {
+			hudTimeSpent = state.getTimeSpent();
+			timeText.setText("Time spent: " + hudTimeSpent + " secs");
+		}
+		timeText.draw(g, 10, pHeight-15);
+		if (state.getNumBoxes() != hudNumBoxes) {
+			hudNumBoxes = state.getNumBoxes();
+			boxesText.setText("Boxes used: " + hudNumBoxes);
+		}
+		boxesText.draw(g, 260, pHeight-15);
+	} // end of drawStatus()
+
+	public void drawGame(Graphics g, GameState state) {
+		drawGame(g, state, headAlpha(state));
+	}
+
+	private void drawGame(Graphics g, GameState state, double alpha) {
+		// draw the worm; the obstacles are in the background
+		if (raster == null)
+			state.drawWorm(g, alpha, null, sprites);
+
+		if (state.isGameOver()) {
+			g.setFont(font);
+			g.setColor(Color.red);	// as left by drawing the head with fillOval()
+			gameOverMessage(g, state);
+		}
+	} // end of drawGame()
+
+	private double headAlpha(GameState state)
+	// how far along its last step to draw the worm's head
+	{
+		if (interpPeriod <= 0)
+			return 1.0;
+		return Math.min(1.0, (double) (System.nanoTime() - state.getUpdateTime()) / interpPeriod);
+	}
+
+	private void gameOverMessage(Graphics g, GameState state) {
+		g.drawString("YOU CAUGHT THE WORM!", pWidth/2-10, pHeight/2-10);
+		g.drawString("YOU SCORED " + state.getScore() + " POINTS!", pWidth/2-10, pHeight/2+10);
+	}
+
+}
@@ -0,0 +1,202 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+
+/* Saves a whole game (the engine's counters and flags, the worm's
+ * dots, bearing and random number state, and all the obstacles) into
+ * a binary file, and restores it into a new engine, so a game can
+ * carry on after the program is restarted.
+ *
+ * The dots and boxes are copied in bulk to and from one buffer, which
+ * is written or read with a single FileChannel call, so even a state
+ * with a very long worm or hundreds of thousands of boxes takes a few
+ * ms. The file isn't memory-mapped, since a mapping stays open until
+ * it is garbage collected, and (on Windows) stops the file from being
+ * replaced or deleted. It is little-endian, and starts with a header:
+ *   magic number, version (short), 0 (short), file length (long),
+ *   panel width and height
+ * followed by WormEngine.save()'s data. A save is written to a
+ * temporary file, which is then renamed over the old one, so a save
+ * cut short (e.g. by a crash) leaves the previous snapshot as it was.
+ *
+ * The panels resume a game from the file named by -Dwormchase.snapshot
+ * if it exists, and save to it when they stop; a finished game deletes
+ * it instead, so the next game starts afresh. Input not yet applied
+ * when the game stops is not saved.
+ *
+ *   java engine.GameSnapshot <snapshot file>   describes a snapshot
+ */
+public class GameSnapshot {
+
+	static final int MAGIC = 0x57534E50;	// "WSNP"
+	static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 2 + 2 + 8 + 4 + 4;
+
+	public static void save(WormEngine engine, String fnm) throws IOException
+	// only call this from the ticking thread, or once it has stopped
+	{
+		long length = HEADER_SIZE + (long) engine.savedSize();
+		if (length > Integer.MAX_VALUE)
+			throw new IOException("game state too big to save: " + length + " bytes");
+
+		ByteBuffer buf = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC);
+		buf.putShort((short) VERSION);
+		buf.putShort((short) 0);
+		buf.putLong(length);
+		buf.putInt(engine.getWidth());
+		buf.putInt(engine.getHeight());
+		engine.save(buf);
+		buf.flip();
+
+		Path path = Paths.get(fnm).toAbsolutePath();
+		Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buf.hasRemaining())
+					channel.write(buf);
+				channel.force(true);
+			}
+			Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			Files.deleteIfExists(tmpPath);
+			throw e;
+		}
+	} // end of save()
+
+	public static void restore(WormEngine engine, String fnm) throws IOException
+	/* replace the engine's game with the one saved in fnm, before the
+	   game loop starts; the panel must be the same size as when it was
+	   saved */
+	{
+		restore(engine, read(fnm));
+	}
+
+	private static ByteBuffer read(String fnm) throws IOException
+	/* read the whole of fnm, and check that its header is a snapshot's;
+	   the buffer is left at the panel width */
+	{
+		ByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(Paths.get(fnm), StandardOpenOption.READ)) {
+			long length = channel.size();
+			if ((length < HEADER_SIZE) || (length > Integer.MAX_VALUE))
+				throw new IOException("not a WormChase snapshot");
+			buf = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf) == -1)
+					throw new IOException("snapshot is the wrong length");
+			}
+			buf.flip();
+		}
+		if (buf.getInt() != MAGIC)
+			throw new IOException("not a WormChase snapshot");
+		int version = buf.getShort();
+		if ((version < 1) || (version > VERSION))
+			throw new IOException("unsupported snapshot version: " + version);
+		buf.getShort();
+		if (buf.getLong() != buf.limit())
+			throw new IOException("snapshot is the wrong length");
+		return buf;
+	} // end of read()
+
+	private static void restore(WormEngine engine, ByteBuffer buf) throws IOException {
+		int pWidth = buf.getInt();
+		int pHeight = buf.getInt();
+		if ((pWidth != engine.getWidth()) || (pHeight != engine.getHeight()))
+			throw new IOException("snapshot is for a " + pWidth + "x" + pHeight + " panel, not " +
+								engine.getWidth() + "x" + engine.getHeight());
+		if (!engine.restore(buf))
+			throw new IOException("snapshot is damaged");
+	} // end of restore()
+
+	public static void restoreIfRequested(WormEngine engine)
+	/* resume the game saved in the file named by the wormchase.snapshot
+	   property, if there is one */
+	{
+		String fnm = System.getProperty("wormchase.snapshot");
+		if ((fnm == null) || !Files.exists(Paths.get(fnm)))
+			return;
+		try {
+			long startTime = System.nanoTime();
+			restore(engine, fnm);
+			System.out.println("Resumed game from " + fnm + " in " + msSince(startTime) + " ms (" +
+						engine.getWorm().getLength() + " dots, " + engine.getNumObstacles() + " boxes)");
+		}
+		catch (IOException e)
+		{	System.out.println("Could not resume game from " + fnm + ": " + e); }
+	} // end of restoreIfRequested()
+
+	public static void saveIfRequested(WormEngine engine)
+	/* save the game to the file named by the wormchase.snapshot property,
+	   or delete the file if the game is over */
+	{
+		String fnm = System.getProperty("wormchase.snapshot");
+		if (fnm == null)
+			return;
+		if (engine.isGameOver()) {
+			try {
+				Files.deleteIfExists(Paths.get(fnm));
+			}
+			catch (IOException e)
+			{	System.out.println("Could not delete finished game " + fnm + ": " + e); }
+			return;
+		}
+		try {
+			long startTime = System.nanoTime();
+			save(engine, fnm);
+			System.out.println("Saved game to " + fnm + " in " + msSince(startTime) + " ms");
+		}
+		catch (IOException e)
+		{	System.out.println("Could not save game to " + fnm + ": " + e); }
+	} // end of saveIfRequested()
+
+	private static String msSince(long startTime) {
+		return new DecimalFormat("0.##").format((System.nanoTime() - startTime)/1000000.0);
+	}
+
+	public static void main(String[] args)
+	/* describe a snapshot, by restoring it into a headless engine made
+	   once the header has been checked */
+	{
+		if (args.length != 1) {
+			System.out.println("Usage: java engine.GameSnapshot <snapshot file>");
+			System.exit(0);
+		}
+		System.setProperty("java.awt.headless", "true");
+		try {
+			long startTime = System.nanoTime();
+			ByteBuffer buf = read(args[0]);
+			int pWidth = buf.getInt(16);
+			int pHeight = buf.getInt(20);
+			if ((pWidth < 1) || (pWidth > Worm.MAX_PANEL_SIZE) || (pHeight < 1) ||
+				(pHeight > Worm.MAX_PANEL_SIZE))
+				throw new IOException("snapshot has a bad panel size: " + pWidth + "x" + pHeight);
+
+			WormEngine engine = new WormEngine(pWidth, pHeight, new ManualClock(), null, 0L);
+			restore(engine, buf);
+			System.out.println(args[0] + ": version " + buf.getShort(4) + ", " +
+							buf.limit() + " bytes, read in " + msSince(startTime) + " ms");
+			System.out.println("Panel: " + pWidth + "x" + pHeight + ", seed " + engine.getSeed() +
+							", tick " + engine.getTickCount());
+			System.out.println("Score: " + engine.getScore() + ", time spent: " + engine.getTimeSpent() +
+							" secs" + (engine.isPaused() ? ", paused" : "") +
+							(engine.isGameOver() ? ", game over" : ""));
+			System.out.println("Worm: " + engine.getWorm().getLength() + " of " +
+							engine.getMaxWormLength() + " dots; boxes: " + engine.getNumObstacles());
+		}
+		catch (IOException e)
+		{	System.out.println("Could not read " + args[0] + ": " + e); }
+	} // end of main()
+
+}
@@ -0,0 +1,267 @@
+package engine;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+
+/* A copy of everything needed to draw one frame, made by
+ * WormEngine.snapshot(). The renderer only reads a GameState, so the
+ * game can carry on updating on another thread while it is drawn.
+ * The obstacles are only ever added, so a state just remembers how
+ * many of them there were.
+ *
+ * The worm's dots are kept in a ring, like the Worm's, with their own
+ * DotGrid. A state usually holds the same worm a few ticks earlier,
+ * so copyFrom() only adds the dots gained at the head since then and
+ * drops those lost from the tail, instead of copying a (possibly
+ * very long) worm every frame; the grid lets drawWorm() find the few
+ * dots in a damaged area.
+ */
+public class GameState {
+
+	private static final int DOTSIZE = Worm.DOTSIZE;
+
+	private static final int MIN_CAPACITY = 64;	// dots; a power of 2
+
+	// the worm's dots, in a ring from tailSlot
+	private short[] wormXs = new short[0];
+	private short[] wormYs = new short[0];
+	private int mask = -1;
+	private int tailSlot = 0;
+	private int numDots = 0;
+	private DotGrid grid;		// the dots' slots, by position
+
+	private long wormId = -1;	// the Worm copied
+	private long dotsEnd = 0;	// its number of dots added, so the head is dot dotsEnd-1
+
+	private Obstacles obs;
+	private int numBoxes;
+
+	private boolean isPaused;
+	private boolean gameOver;
+	private int score;
+	private int timeSpent;	// in seconds
+	private long tickCount;
+
+	private long updateTime;	// when the state was made (ns), for interpolation
+
+	void copyFrom(Worm fred, Obstacles obs, boolean isPaused, boolean gameOver,
+					int score, int timeSpent, long tickCount) {
+		long end = fred.getNumAdded();
+		int len = fred.getLength();
+		if ((fred.getId() != wormId) || (end < dotsEnd) || (end - dotsEnd >= len) ||
+			(len > wormXs.length))
+			copyAllDots(fred, end, len);
+		else
+			copyNewDots(fred, end, len);
+
+		this.obs = obs;
+		numBoxes = obs.getNumObstacles();
+		this.isPaused = isPaused;
+		this.gameOver = gameOver;
+		this.score = score;
+		this.timeSpent = timeSpent;
+		this.tickCount = tickCount;
+	} // end of copyFrom()
+
+	private void copyAllDots(Worm fred, long end, int len)
+	// copy a new worm, one that has moved a long way, or one too long for the ring
+	{
+		if ((fred.getId() != wormId) || (len > wormXs.length)) {
+			int capacity = MIN_CAPACITY;
+			while (capacity < len)
+				capacity *= 2;
+			capacity = Math.max(capacity, wormXs.length);
+			wormXs = new short[capacity];
+			wormYs = new short[capacity];
+			mask = capacity-1;
+			grid = fred.newGrid(capacity);
+		}
+		else
+			grid.clear();
+
+		long start = end - len;
+		for (int i = 0; i < len; i++) {
+			wormXs[i] = (short) fred.getDotX(start + i);
+			wormYs[i] = (short) fred.getDotY(start + i);
+			grid.add(i, wormXs[i], wormYs[i]);
+		}
+		tailSlot = 0;
+		numDots = len;
+		wormId = fred.getId();
+		dotsEnd = end;
+	} // end of copyAllDots()
+
+	private void copyNewDots(Worm fred, long end, int len)
+	// drop the dots the worm has lost from its tail, and add those gained at its head
+	{
+		int lost = numDots + (int) (end - dotsEnd) - len;
+		for (int n = 0; n < lost; n++) {
+			grid.removeOldest(tailSlot, wormXs[tailSlot], wormYs[tailSlot]);
+			tailSlot = (tailSlot+1) & mask;
+		}
+		numDots -= lost;
+
+		for (long dot = dotsEnd; dot < end; dot++) {
+			int slot = (tailSlot + numDots) & mask;
+			wormXs[slot] = (short) fred.getDotX(dot);
+			wormYs[slot] = (short) fred.getDotY(dot);
+			grid.add(slot, wormXs[slot], wormYs[slot]);
+			numDots++;
+		}
+		dotsEnd = end;
+	} // end of copyNewDots()
+
+	public void draw(Graphics g, double alpha)
+	// draw the obstacles and the worm
+	{
+		obs.draw(g, numBoxes);
+		drawWorm(g, alpha, null, null);
+	}
+
+	public void drawWorm(Graphics g, double alpha, Rectangle area, SpriteCache sprites)
+	/* draw the worm, or only the dots that intersect area (if it isn't
+	   null); the head is drawn alpha (0-1) of the way from the previous
+	   head to the current one. The dots are copied from sprites, if it
+	   isn't null. */
+	{
+		// draw a black worm with a red head
+		if (numDots > 0) {
+			g.setColor(Color.black);
+			int headSlot = (tailSlot + numDots-1) & mask;
+			if (area == null) {
+				for (int i = 0; i < numDots-1; i++) {
+					int slot = (tailSlot + i) & mask;
+					drawBodyDot(g, wormXs[slot], wormYs[slot], sprites);
+				}
+			}
+			else
+				drawBodyDotsIn(g, area, headSlot, sprites);
+
+			int headX = getHeadX(alpha);
+			int headY = getHeadY(alpha);
+			if (sprites != null)
+				sprites.drawHeadDot(g, headX, headY);
+			else {
+				g.setColor(Color.red);
+				g.fillOval(headX, headY, DOTSIZE, DOTSIZE);
+			}
+		}
+	} // end of drawWorm()
+
+	private void drawBodyDotsIn(Graphics g, Rectangle area, int headSlot, SpriteCache sprites)
+	/* draw the body dots that intersect area, found using the grid, each
+	   only once; the body dots all look the same, so the order they're
+	   drawn in doesn't matter */
+	{
+		int col0 = Math.floorDiv(area.x - DOTSIZE + 1, DOTSIZE);
+		int col1 = Math.min(Math.floorDiv(area.x + area.width - 1, DOTSIZE), col0 + grid.numCols - 1);
+		int row0 = Math.floorDiv(area.y - DOTSIZE + 1, DOTSIZE);
+		int row1 = Math.min(Math.floorDiv(area.y + area.height - 1, DOTSIZE), row0 + grid.numRows - 1);
+
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				for (int slot = grid.first(col, row); slot != -1; slot = grid.next(slot)) {
+					if ((slot != headSlot) && grid.inCell(wormXs[slot], wormYs[slot], col, row) &&
+						area.intersects(wormXs[slot], wormYs[slot], DOTSIZE, DOTSIZE))
+						drawBodyDot(g, wormXs[slot], wormYs[slot], sprites);
+				}
+			}
+		}
+	} // end of drawBodyDotsIn()
+
+	private void drawBodyDot(Graphics g, int x, int y, SpriteCache sprites) {
+		if (sprites != null)
+			sprites.drawBodyDot(g, x, y);
+		else
+			g.fillOval(x, y, DOTSIZE, DOTSIZE);
+	}
+
+	int getHeadX(double alpha)
+	/* where to draw the head: alpha (0-1) of the way from the previous
+	   head to the current one, unless that step wrapped around */
+	{
+		int head = numDots-1;
+		if ((alpha >= 1.0) || (head == 0) || wrappedAtHead())
+			return getDotX(head);
+		return getDotX(head-1) + (int) ((getDotX(head) - getDotX(head-1))*alpha);
+	} // end of getHeadX()
+
+	int getHeadY(double alpha) {
+		int head = numDots-1;
+		if ((alpha >= 1.0) || (head == 0) || wrappedAtHead())
+			return getDotY(head);
+		return getDotY(head-1) + (int) ((getDotY(head) - getDotY(head-1))*alpha);
+	}
+
+	private boolean wrappedAtHead() {
+		int head = numDots-1;
+		return (Math.abs(getDotX(head) - getDotX(head-1)) > DOTSIZE) ||
+				(Math.abs(getDotY(head) - getDotY(head-1)) > DOTSIZE);
+	}
+
+	public int getNumDots() {
+		return numDots;
+	}
+
+	public int getDotX(int i)
+	// the x of the i-th dot, counting from the tail
+	{
+		return wormXs[ (tailSlot + i) & mask ];
+	}
+
+	public int getDotY(int i) {
+		return wormYs[ (tailSlot + i) & mask ];
+	}
+
+	long getWormId() {
+		return wormId;
+	}
+
+	long getFirstDot()
+	// the tail's number, as in Worm.getNumAdded()
+	{
+		return dotsEnd - numDots;
+	}
+
+	long getDotsEnd() {
+		return dotsEnd;
+	}
+
+	public Obstacles getObstacles() {
+		return obs;
+	}
+
+	void setUpdateTime(long updateTime) {
+		this.updateTime = updateTime;
+	}
+
+	public long getUpdateTime() {
+		return updateTime;
+	}
+
+	public int getNumBoxes() {
+		return numBoxes;
+	}
+
+	public boolean isPaused() {
+		return isPaused;
+	}
+
+	public boolean isGameOver() {
+		return gameOver;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public int getTimeSpent() {
+		return timeSpent;
+	}
+
+	public long getTickCount() {
+		return tickCount;
+	}
+
+}
@@ -0,0 +1,115 @@
+package engine;
+
+/* Updates a WormEngine on its own thread at a fixed rate, and passes
+ * a GameState of each update to the rendering thread through a
+ * TripleBuffer. The update rate no longer depends on how long a
+ * frame takes to draw, and the two threads can run on different
+ * cores.
+ *
+ * The panels use one when started with -Dwormchase.decoupled=true;
+ * -Dwormchase.ups=<rate> sets the update rate (the FPS by default).
+ */
+public class GameUpdater implements Runnable {
+
+	// the most updates run back-to-back when catching up
+	private static final int MAX_CATCH_UPS = 25;
+
+	// how often the engine's time spent is brought up to date
+	private static final long TIME_INTERVAL = 1000000000L;	// 1 sec
+
+	private WormEngine engine;
+	private long period;	// in ns
+	private FramePacer pacer;
+	private TripleBuffer<GameState> states;
+	private FrameStats stats;	// times the updates, if not null
+
+	private volatile boolean running;
+	private Thread updateThread;
+
+	public GameUpdater(WormEngine engine, long period) {
+		this.engine = engine;
+		this.period = period;
+		pacer = new FramePacer(period);
+		states = new TripleBuffer<GameState>(new GameState(), new GameState(), new GameState());
+		publishState();		// so there is always something to draw
+		states.getFront();
+	} // end of GameUpdater()
+
+	public static GameUpdater createIfRequested(WormEngine engine, long period)
+	// return an updater if -Dwormchase.decoupled=true, otherwise null
+	{
+		if (!Boolean.getBoolean("wormchase.decoupled"))
+			return null;
+		String ups = System.getProperty("wormchase.ups");
+		if (ups != null)
+			period = 1000000000L/Integer.parseInt(ups);
+		System.out.println("Updating on a separate thread every " + (period/1000000.0) + " ms");
+		return new GameUpdater(engine, period);
+	} // end of createIfRequested()
+
+	public void setStats(FrameStats stats)
+	// must be called before start()
+	{
+		this.stats = stats;
+	}
+
+	public void start() {
+		running = true;
+		updateThread = new Thread(this, "WormChase update");
+		updateThread.start();
+	}
+
+	public void stop() {
+		running = false;
+		try {
+			updateThread.join();
+		}
+		catch (InterruptedException ex) {}
+	}
+
+	public void run()
+	/* Update once per period. If the thread falls behind, it catches
+	   up with back-to-back updates, but gives up on the lost time
+	   after MAX_CATCH_UPS of them. This is the only thread that
+	   changes the engine while it runs. */
+	{
+		long nextTime = System.nanoTime();
+		long timeChecked = nextTime;
+		while (running) {
+			long updateStart = System.nanoTime();
+			engine.tick();
+			publishState();
+			if (stats != null)
+				stats.record(FrameStats.Phase.UPDATE, System.nanoTime() - updateStart);
+			if (updateStart - timeChecked >= TIME_INTERVAL) {
+				engine.updateTimeSpent();
+				timeChecked = updateStart;
+			}
+
+			nextTime += period;
+			long sleepTime = nextTime - System.nanoTime();
+			if (sleepTime > 0)
+				pacer.sleep(sleepTime);
+			else if (-sleepTime > MAX_CATCH_UPS*period)
+				nextTime = System.nanoTime();	// too far behind; start again from now
+		}
+	} // end of run()
+
+	private void publishState() {
+		GameState state = states.getBack();
+		engine.snapshot(state);
+		state.setUpdateTime(System.nanoTime());
+		states.publish();
+	}
+
+	public GameState latestState()
+	// called by the rendering thread
+	{
+		return states.getFront();
+	}
+
+	public long getPeriod() {
+		return period;
+	}
+
+}
@@ -0,0 +1,77 @@
+package engine;
+
+import java.text.DecimalFormat;
+import java.util.concurrent.ForkJoinPool;
+
+/* Runs a WormEngine with no display, as fast as possible, and
+ * reports the number of ticks per second. With a number of worms,
+ * it runs a WormSwarm of that many worms instead. The same seed
+ * gives the same run. The worms can be given a longer full length
+ * than the usual Worm.DEFAULT_LENGTH dots.
+ *
+ *   java engine.HeadlessWormChase [ticks] [width height] [worms] [seed] [length]
+ */
+public class HeadlessWormChase {
+
+	private static final long DEFAULT_TICKS = 10000000L;
+
+	private static final int DEFAULT_WIDTH = 1024;
+	private static final int DEFAULT_HEIGHT = 768;
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		long ticks = DEFAULT_TICKS;
+		int pWidth = DEFAULT_WIDTH;
+		int pHeight = DEFAULT_HEIGHT;
+		int numWorms = 1;
+		long seed = System.nanoTime();
+		int maxLength = Worm.DEFAULT_LENGTH;
+		if (args.length > 0)
+			ticks = Long.parseLong(args[0]);
+		if (args.length > 2) {
+			pWidth = Integer.parseInt(args[1]);
+			pHeight = Integer.parseInt(args[2]);
+		}
+		if (args.length > 3)
+			numWorms = Integer.parseInt(args[3]);
+		if (args.length > 4)
+			seed = Long.parseLong(args[4]);
+		if (args.length > 5)
+			maxLength = Integer.parseInt(args[5]);
+		if ((pWidth > Worm.MAX_PANEL_SIZE) || (pHeight > Worm.MAX_PANEL_SIZE)) {
+			System.out.println("The width and height can be at most " + Worm.MAX_PANEL_SIZE);
+			System.exit(0);
+		}
+
+		long startTime, timeDiff;
+		if (numWorms == 1) {
+			WormEngine engine = new WormEngine(pWidth, pHeight, new ManualClock(), null, seed);
+			engine.setMaxWormLength(maxLength);
+			engine.startGame();
+
+			startTime = System.nanoTime();
+			engine.advance(ticks);
+			timeDiff = System.nanoTime() - startTime;
+		}
+		else {
+			WormSwarm swarm = new WormSwarm(numWorms, pWidth, pHeight,
+										new Obstacles(pWidth, pHeight, null),
+										seed, ForkJoinPool.commonPool());
+			swarm.setMaxLength(maxLength);
+			startTime = System.nanoTime();
+			for (long i = 0; i < ticks; i++)
+				swarm.tick();
+			timeDiff = System.nanoTime() - startTime;
+		}
+
+		DecimalFormat df = new DecimalFormat("0.##");
+		System.out.println("Ticks: " + ticks + " (" + numWorms + " worms, up to " +
+							maxLength + " dots long)");
+		System.out.println("Time: " + df.format(timeDiff/1000000.0) + " ms");
+		System.out.println("Ticks/sec: " + df.format(ticks * 1000000000.0 / timeDiff));
+		System.out.println("Worm moves/sec: " + df.format(ticks * numWorms * 1000000000.0 / timeDiff));
+		System.out.println("Seed: " + seed);
+	} // end of main()
+
+}
@@ -0,0 +1,128 @@
+package engine;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/* A fixed-size histogram of non-negative long values (e.g. times in
+ * ns), with log-linear buckets: every power of two range is split
+ * into SUB_BUCKETS equal buckets, so each bucket is within about 3% of
+ * its value, from 1 ns up to Long.MAX_VALUE. Recording a value never
+ * allocates, and the whole histogram is one long[] of about 15 KB.
+ *
+ * It isn't thread-safe: only one thread should record into it, and
+ * others should only read it after that thread has finished.
+ */
+public class Histogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;		// 32
+	private static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private long[] counts = new long[NUM_BUCKETS];
+	private long totalCount = 0;
+	private double total = 0.0;
+	private long min = Long.MAX_VALUE;
+	private long max = 0L;
+
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts[ bucketIndex(value) ]++;
+		totalCount++;
+		total += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+	} // end of record()
+
+	private static int bucketIndex(long value)
+	/* Values below 2*SUB_BUCKETS have a bucket each. Above that, the
+	   bucket is given by the value's top SUB_BITS+1 bits and how far
+	   they had to be shifted down. */
+	{
+		if (value < 2*SUB_BUCKETS)
+			return (int) value;
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BITS;
+		int top = (int) (value >>> shift);		// SUB_BUCKETS to 2*SUB_BUCKETS-1
+		return (shift+1)*SUB_BUCKETS + (top - SUB_BUCKETS);
+	} // end of bucketIndex()
+
+	private static long bucketLow(int i)
+	// the smallest value in bucket i
+	{
+		if (i < 2*SUB_BUCKETS)
+			return i;
+		int shift = i/SUB_BUCKETS - 1;
+		return (long) (SUB_BUCKETS + i%SUB_BUCKETS) << shift;
+	}
+
+	private static long bucketHigh(int i)
+	// the largest value in bucket i
+	{
+		if (i < 2*SUB_BUCKETS)
+			return i;
+		int shift = i/SUB_BUCKETS - 1;
+		return bucketLow(i) + ((1L << shift) - 1);
+	}
+
+	public long getCount() {
+		return totalCount;
+	}
+
+	public long getMin() {
+		return (totalCount > 0) ? min : 0L;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return (totalCount > 0) ? total/totalCount : 0.0;
+	}
+
+	public long valueAtPercentile(double percentile)
+	/* the largest value in the bucket holding the given percentile
+	   (0-100), but no more than the largest value recorded */
+	{
+		if (totalCount == 0)
+			return 0L;
+		long rank = (long) Math.ceil(percentile/100.0 * totalCount);
+		rank = Math.max(1, Math.min(rank, totalCount));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(bucketHigh(i), max);
+		}
+		return max;
+	} // end of valueAtPercentile()
+
+	public void reset() {
+		Arrays.fill(counts, 0L);
+		totalCount = 0;
+		total = 0.0;
+		min = Long.MAX_VALUE;
+		max = 0L;
+	}
+
+	public void printDistribution(PrintStream out, double scale, String units)
+	/* print one line for each bucket with values in it: its range, its
+	   count, and the percentage of values up to and including it. The
+	   values are divided by scale (e.g. 1e6 to print ns as ms). */
+	{
+		DecimalFormat df = new DecimalFormat("0.###");		// 3 dp
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			if (counts[i] == 0)
+				continue;
+			seen += counts[i];
+			out.println("  " + df.format(bucketLow(i)/scale) + " - " +
+					df.format(bucketHigh(i)/scale) + " " + units + ": " + counts[i] +
+					" (" + df.format(100.0*seen/totalCount) + "%)");
+		}
+	} // end of printDistribution()
+
+}
@@ -0,0 +1,82 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Player input on its way from the Swing event thread to the thread
+ * that ticks the engine. The event handlers offer() commands, and the
+ * engine takes them all out at the start of its next tick, so the game
+ * state is only ever changed by the ticking thread and needs no locks.
+ *
+ * There must be only one producer (the event thread) and one consumer
+ * (the ticking thread). Each side only advances its own index, and
+ * publishes it with an ordered write after filling or emptying a slot.
+ * If the queue is full, offer() drops the command instead of making
+ * the event thread wait; at a few clicks a second that never happens.
+ */
+class InputQueue {
+
+	static final int PRESS = 1;		// x, y
+	static final int PAUSE = 2;		// x is 1 to pause, 0 to resume
+	static final int TOGGLE_PAUSE = 3;
+
+	private static final int SIZE = 64;		// commands; a power of 2
+
+	private int[] types = new int[SIZE];
+	private int[] xs = new int[SIZE];
+	private int[] ys = new int[SIZE];
+
+	private AtomicLong head = new AtomicLong(0);	// next slot to fill; written by the producer
+	private AtomicLong tail = new AtomicLong(0);	// next slot to take; written by the consumer
+
+	private volatile int dropped = 0;	// only changed by the producer; read by anyone
+
+	boolean offer(int type, int x, int y)
+	// add a command; returns false if it was dropped
+	{
+		long h = head.get();
+		if (h - tail.get() >= SIZE) {
+			dropped++;
+			return false;
+		}
+		int i = (int) (h & (SIZE-1));
+		types[i] = type;
+		xs[i] = x;
+		ys[i] = y;
+		head.lazySet(h+1);		// publish the command
+		return true;
+	} // end of offer()
+
+	/* The consumer takes commands with
+	 *     while (queue.hasNext()) {
+	 *       ... queue.type(), queue.x(), queue.y() ...
+	 *       queue.next();
+	 *     }
+	 */
+
+	boolean hasNext() {
+		return tail.get() != head.get();
+	}
+
+	int type() {
+		return types[ (int) (tail.get() & (SIZE-1)) ];
+	}
+
+	int x() {
+		return xs[ (int) (tail.get() & (SIZE-1)) ];
+	}
+
+	int y() {
+		return ys[ (int) (tail.get() & (SIZE-1)) ];
+	}
+
+	void next()
+	// free the current command's slot
+	{
+		tail.lazySet(tail.get()+1);
+	}
+
+	int getDropped() {
+		return dropped;
+	}
+
+}
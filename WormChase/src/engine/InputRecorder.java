@@ -0,0 +1,160 @@
+package engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/* Records a game's input into a compact binary log, so InputReplay
+ * can play the game again exactly.
+ *
+ * The log starts with a header (magic number, version, panel size and
+ * the engine's seed), followed by one event per input. Each event is
+ * a type byte and the number of ticks since the previous event (as a
+ * variable-length number), then its data:
+ *
+ *   PRESS   x, y (shorts)
+ *   PAUSE   paused (byte)
+ *   TIME    seconds spent (variable-length)
+ *   LENGTH  the worm's new full length (variable-length)
+ *   END     score, time spent, no. of boxes (ints), worm hash (long)
+ *
+ * END is written by finish(), and is what the replay checks against.
+ */
+public class InputRecorder {
+
+	static final int MAGIC = 0x574F524D;	// "WORM"
+	static final int VERSION = 2;		// 2 added LENGTH
+
+	static final int PRESS = 1;
+	static final int PAUSE = 2;
+	static final int TIME = 3;
+	static final int END = 4;
+	static final int LENGTH = 5;
+
+	private DataOutputStream out;
+	private long prevTick = 0;
+	private long numEvents = 0;
+
+	public InputRecorder(OutputStream os, int pWidth, int pHeight, long seed)
+										throws IOException {
+		out = new DataOutputStream( new BufferedOutputStream(os) );
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeInt(pWidth);
+		out.writeInt(pHeight);
+		out.writeLong(seed);
+	} // end of InputRecorder()
+
+	public InputRecorder(String fnm, int pWidth, int pHeight, long seed)
+										throws IOException {
+		this(new FileOutputStream(fnm), pWidth, pHeight, seed);
+	}
+
+	public static void recordIfRequested(WormEngine engine, int pWidth, int pHeight)
+	/* start recording the engine's input if the wormchase.record
+	   property names a log file, e.g. -Dwormchase.record=game.log */
+	{
+		String fnm = System.getProperty("wormchase.record");
+		if (fnm == null)
+			return;
+		if (engine.getTickCount() > 0) {	// a replay starts from a new game
+			System.out.println("Not recording a resumed game");
+			return;
+		}
+		try {
+			engine.setRecorder( new InputRecorder(fnm, pWidth, pHeight, engine.getSeed()) );
+			System.out.println("Recording input to " + fnm);
+		}
+		catch (IOException e)
+		{	System.out.println("Could not record to " + fnm + ": " + e); }
+	} // end of recordIfRequested()
+
+	void recordPress(long tick, int x, int y) {
+		try {
+			startEvent(PRESS, tick);
+			out.writeShort(x);
+			out.writeShort(y);
+		}
+		catch (IOException e)
+		{	stopRecording(e); }
+	}
+
+	void recordPause(long tick, boolean paused) {
+		try {
+			startEvent(PAUSE, tick);
+			out.writeByte(paused ? 1 : 0);
+		}
+		catch (IOException e)
+		{	stopRecording(e); }
+	}
+
+	void recordTime(long tick, int secs) {
+		try {
+			startEvent(TIME, tick);
+			writeVarLong(secs);
+		}
+		catch (IOException e)
+		{	stopRecording(e); }
+	}
+
+	void recordLength(long tick, int maxLength) {
+		try {
+			startEvent(LENGTH, tick);
+			writeVarLong(maxLength);
+		}
+		catch (IOException e)
+		{	stopRecording(e); }
+	}
+
+	public void finish(WormEngine engine)
+	// write the final state of the game, and close the log
+	{
+		if (out == null)
+			return;
+		try {
+			startEvent(END, engine.getTickCount());
+			out.writeInt(engine.getScore());
+			out.writeInt(engine.getTimeSpent());
+			out.writeInt(engine.getNumObstacles());
+			out.writeLong(engine.getWorm().stateHash());
+			out.close();
+			System.out.println("Recorded " + numEvents + " input events");
+		}
+		catch (IOException e)
+		{	System.out.println("Recording error: " + e); }
+		out = null;
+	} // end of finish()
+
+	private void startEvent(int type, long tick) throws IOException {
+		if (out == null)
+			throw new IOException("recording stopped");
+		out.writeByte(type);
+		writeVarLong(tick - prevTick);
+		prevTick = tick;
+		numEvents++;
+	}
+
+	private void writeVarLong(long v) throws IOException
+	// 7 bits per byte, with the top bit set on all but the last byte
+	{
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	private void stopRecording(IOException e) {
+		if (out != null) {
+			System.out.println("Recording error: " + e);
+			try {
+				out.close();
+			}
+			catch (IOException ex) {}
+			out = null;
+		}
+	}
+
+}
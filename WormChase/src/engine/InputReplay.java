@@ -0,0 +1,146 @@
+package engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+
+/* Plays an InputRecorder log back into a new WormEngine, with no
+ * display and no pacing, and checks that the game ends in the same
+ * state (score, time, boxes and worm) as the recorded one. The log
+ * is read into memory once, so it can be replayed repeatedly to
+ * profile exactly the same workload.
+ *
+ *   java engine.InputReplay <log file> [repeats]
+ */
+public class InputReplay {
+
+	private byte[] log;
+	private WormEngine engine;
+	private String mismatch;	// why the last replay failed, or null
+
+	public InputReplay(byte[] log) {
+		this.log = log;
+	}
+
+	public InputReplay(String fnm) throws IOException {
+		this( Files.readAllBytes(Paths.get(fnm)) );
+	}
+
+	public boolean run() throws IOException
+	// replay the log; return true if the final state matched
+	{
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream(log) );
+		if (in.readInt() != InputRecorder.MAGIC)
+			throw new IOException("not a WormChase input log");
+		int version = in.readShort();
+		if ((version < 1) || (version > InputRecorder.VERSION))
+			throw new IOException("unsupported input log version: " + version);
+		int pWidth = in.readInt();
+		int pHeight = in.readInt();
+		long seed = in.readLong();
+
+		engine = new WormEngine(pWidth, pHeight, new ManualClock(), null, seed);
+		engine.startGame();
+		mismatch = "no END event in the log";
+
+		long tick = 0;
+		int type;
+		while ((type = in.read()) != -1) {
+			tick += readVarLong(in);
+			engine.advance(tick - engine.getTickCount());	// catch up to the event
+
+			switch (type) {
+				case InputRecorder.PRESS:
+					int x = in.readShort();
+					int y = in.readShort();
+					engine.testPress(x, y);
+					break;
+				case InputRecorder.PAUSE:
+					engine.setPaused(in.readByte() != 0);
+					break;
+				case InputRecorder.TIME:
+					engine.setTimeSpent( (int) readVarLong(in) );
+					break;
+				case InputRecorder.LENGTH:
+					engine.setMaxWormLength( (int) readVarLong(in) );
+					break;
+				case InputRecorder.END:
+					mismatch = checkEnd(in);
+					return (mismatch == null);
+				default:
+					throw new IOException("unknown input event type: " + type);
+			}
+		}
+		return false;
+	} // end of run()
+
+	private String checkEnd(DataInputStream in) throws IOException
+	// compare the recorded final state with the replayed one
+	{
+		int score = in.readInt();
+		int timeSpent = in.readInt();
+		int numBoxes = in.readInt();
+		long wormHash = in.readLong();
+
+		if (engine.getScore() != score)
+			return "score " + engine.getScore() + " != " + score;
+		if (engine.getTimeSpent() != timeSpent)
+			return "time spent " + engine.getTimeSpent() + " != " + timeSpent;
+		if (engine.getNumObstacles() != numBoxes)
+			return "boxes used " + engine.getNumObstacles() + " != " + numBoxes;
+		if (engine.getWorm().stateHash() != wormHash)
+			return "worm state differs";
+		return null;
+	} // end of checkEnd()
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long v = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.read();
+			if (b == -1)
+				throw new EOFException();
+			v |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return v;
+	} // end of readVarLong()
+
+	public WormEngine getEngine() {
+		return engine;
+	}
+
+	public String getMismatch() {
+		return mismatch;
+	}
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length == 0) {
+			System.out.println("Usage: java engine.InputReplay <log file> [repeats]");
+			return;
+		}
+		int repeats = 1;
+		if (args.length > 1)
+			repeats = Integer.parseInt(args[1]);
+
+		InputReplay replay = new InputReplay(args[0]);
+		DecimalFormat df = new DecimalFormat("0.##");
+		for (int i = 0; i < repeats; i++) {
+			long startTime = System.nanoTime();
+			boolean ok = replay.run();
+			long timeDiff = System.nanoTime() - startTime;
+
+			long ticks = replay.getEngine().getTickCount();
+			System.out.println((ok ? "Replay OK: " : "Replay MISMATCH (" + replay.getMismatch() + "): ") +
+					ticks + " ticks in " + df.format(timeDiff/1000000.0) + " ms (" +
+					df.format(ticks * 1000000000.0 / timeDiff) + " ticks/sec)");
+		}
+	} // end of main()
+
+}
@@ -0,0 +1,20 @@
+package engine;
+
+// a Clock that only moves when advance() or set() is called
+public class ManualClock implements Clock {
+
+	private long timeNow = 0L;	// in ns
+
+	public long nanoTime() {
+		return timeNow;
+	}
+
+	public void advance(long nanos) {
+		timeNow += nanos;
+	}
+
+	public void set(long nanos) {
+		timeNow = nanos;
+	}
+
+}
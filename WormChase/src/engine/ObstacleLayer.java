@@ -0,0 +1,76 @@
+package engine;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/* The panel's background (white) with all the obstacle boxes already
+ * drawn on it, kept in an image between frames. Boxes never move once
+ * added, so update() only draws the boxes added since the last frame,
+ * and the whole layer is then copied to the screen in one drawImage().
+ * A frame costs the same however many boxes there are.
+ *
+ * The layer is redrawn from scratch when its size changes, or when it
+ * is given a different Obstacles or fewer boxes than before (a new
+ * game). It is only used by the rendering thread.
+ */
+public class ObstacleLayer {
+
+	private static final int BOX_LENGTH = Obstacles.BOX_LENGTH;
+
+	private int width, height;
+	private BufferedImage layer;		// null until the first update()
+
+	private Obstacles drawnObs;		// the obstacles on the layer
+	private int numDrawn = 0;			// how many of their boxes are on it
+
+	public ObstacleLayer(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	public void setSize(int w, int h) {
+		if ((w != width) || (h != height)) {
+			width = w;
+			height = h;
+			layer = null;
+		}
+	}
+
+	public void update(Obstacles obs, int numBoxes)
+	// bring the layer up to date with the first numBoxes boxes of obs
+	{
+		if (layer == null) {
+			layer = SpriteCache.makeImage(width, height, Transparency.OPAQUE);
+			drawnObs = null;		// so it gets cleared
+		}
+		if ((obs != drawnObs) || (numBoxes < numDrawn))
+			clear();
+
+		if (numDrawn < numBoxes) {
+			Graphics g = layer.getGraphics();
+			g.setColor(Color.blue);
+			for (int i = numDrawn; i < numBoxes; i++)
+				g.fillRect(obs.getBoxX(i), obs.getBoxY(i), BOX_LENGTH, BOX_LENGTH);
+			g.dispose();
+		}
+		drawnObs = obs;
+		numDrawn = numBoxes;
+	} // end of update()
+
+	private void clear() {
+		Graphics g = layer.getGraphics();
+		g.setColor(Color.white);
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		numDrawn = 0;
+	}
+
+	public void draw(Graphics g)
+	// copy the layer at (0,0); only the clipped part of it if g has a clip
+	{
+		g.drawImage(layer, 0, 0, null);
+	}
+
+}
@@ -0,0 +1,255 @@
+package engine;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/* The boxes are only ever added, so readers (the game update and the
+ * rendering) work on an immutable view of the first numBoxes boxes,
+ * published through a volatile field, and never lock. add() is the
+ * only writer; it is synchronized so that adds from several threads
+ * take turns, but it never blocks a reader.
+ */
+public class Obstacles {
+
+	static final int BOX_LENGTH = 12;
+	private StatusListener listener;
+
+	/* The boxes are also bucketed into a grid of BOX_LENGTH cells,
+	 * which wraps around at the panel edges like the worm does.
+	 * Each cell's boxes are chained in the order they were added:
+	 * cellFirst[] holds the oldest box in a cell (or -1) and
+	 * nextInCell[] the next newer box in the same cell (or -1), so
+	 * hits() only looks at the boxes in the few cells near the point,
+	 * however many boxes there are.
+	 *
+	 * add() only writes array slots past the current numBoxes, or
+	 * replaces a -1 chain end with the new box's index, so an older
+	 * view stays valid: a reader just stops at the end of a chain or
+	 * at the first index that is not in its view.
+	 */
+	private static class Boxes {
+		final int[] xs, ys;		// the top-left corners of the boxes
+		final int[] nextInCell;
+		final int[] cellFirst;
+		final int numBoxes;		// also the version of this view
+
+		Boxes(int[] xs, int[] ys, int[] nextInCell, int[] cellFirst, int numBoxes) {
+			this.xs = xs;
+			this.ys = ys;
+			this.nextInCell = nextInCell;
+			this.cellFirst = cellFirst;
+			this.numBoxes = numBoxes;
+		}
+	} // end of Boxes class
+
+	private volatile Boxes boxes;
+
+	private int numCols, numRows;
+	private int[] cellLast;		// the newest box in each cell; used by add()
+
+	public Obstacles(int pWidth, int pHeight, StatusListener listener) {
+		this.listener = listener;
+
+		numCols = Math.max(1, (pWidth + BOX_LENGTH-1) / BOX_LENGTH);
+		numRows = Math.max(1, (pHeight + BOX_LENGTH-1) / BOX_LENGTH);
+		int[] cellFirst = new int[numCols * numRows];
+		Arrays.fill(cellFirst, -1);
+		cellLast = new int[numCols * numRows];
+		Arrays.fill(cellLast, -1);
+
+		int[] nextInCell = new int[16];
+		Arrays.fill(nextInCell, -1);
+		boxes = new Boxes(new int[16], new int[16], nextInCell, cellFirst, 0);
+	} // end of Obstacles()
+
+	synchronized public void add(int x, int y) {
+		Boxes b = boxes;
+		int boxIdx = b.numBoxes;
+		int[] xs = b.xs;
+		int[] ys = b.ys;
+		int[] nextInCell = b.nextInCell;
+		if (boxIdx == xs.length) {	// make room for more boxes in new arrays
+			xs = Arrays.copyOf(xs, boxIdx*2);
+			ys = Arrays.copyOf(ys, boxIdx*2);
+			nextInCell = Arrays.copyOf(nextInCell, boxIdx*2);
+			Arrays.fill(nextInCell, boxIdx, boxIdx*2, -1);
+		}
+		xs[boxIdx] = x;
+		ys[boxIdx] = y;
+
+		// add the box to the end of its cell's chain
+		int cell = cellIndex(Math.floorDiv(x, BOX_LENGTH), Math.floorDiv(y, BOX_LENGTH));
+		if (cellLast[cell] == -1)
+			b.cellFirst[cell] = boxIdx;
+		else
+			nextInCell[ cellLast[cell] ] = boxIdx;
+		cellLast[cell] = boxIdx;
+
+		boxes = new Boxes(xs, ys, nextInCell, b.cellFirst, boxIdx+1);	// publish
+
+		if (listener != null)
+			listener.setBoxNumber( boxIdx+1 );	// report new no. of boxes
+	} // end of add()
+
+	int savedSize(int numBoxes)
+	// the number of bytes save() writes
+	{
+		return 4 + 2*4*numBoxes;
+	}
+
+	void save(ByteBuffer buf, int numBoxes)
+	/* write the first numBoxes boxes at buf's position, and move past
+	   them: the no. of boxes, then their x's and y's */
+	{
+		Boxes b = boxes;
+		numBoxes = Math.min(numBoxes, b.numBoxes);
+		buf.putInt(numBoxes);
+		buf.asIntBuffer().put(b.xs, 0, numBoxes);
+		buf.position(buf.position() + 4*numBoxes);
+		buf.asIntBuffer().put(b.ys, 0, numBoxes);
+		buf.position(buf.position() + 4*numBoxes);
+	} // end of save()
+
+	static boolean canRestore(ByteBuffer buf)
+	/* check that buf holds boxes written by save(), and move past them;
+	   false if there aren't enough bytes for them */
+	{
+		if (buf.remaining() < 4)
+			return false;
+		int numBoxes = buf.getInt();
+		if ((numBoxes < 0) || (buf.remaining() < 2*4L*numBoxes))
+			return false;
+		buf.position(buf.position() + 2*4*numBoxes);
+		return true;
+	} // end of canRestore()
+
+	synchronized boolean restore(ByteBuffer buf)
+	/* replace all the boxes with those written by save(), and move
+	   past them; the grid is rebuilt and published in one go, rather
+	   than a box at a time as add() does. Returns false, leaving the
+	   boxes as they were, if canRestore() does. */
+	{
+		if (!canRestore( buf.duplicate().order(buf.order()) ))
+			return false;
+		int numBoxes = buf.getInt();
+
+		int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, numBoxes)) << 1);
+		int[] xs = new int[capacity];
+		int[] ys = new int[capacity];
+		IntBuffer ib = buf.asIntBuffer();
+		ib.get(xs, 0, numBoxes);
+		ib.get(ys, 0, numBoxes);
+		buf.position(buf.position() + 2*4*numBoxes);
+
+		int[] nextInCell = new int[capacity];
+		Arrays.fill(nextInCell, -1);
+		int[] cellFirst = new int[numCols * numRows];	// new, so older views stay valid
+		Arrays.fill(cellFirst, -1);
+		Arrays.fill(cellLast, -1);
+		for (int i = 0; i < numBoxes; i++) {
+			int cell = cellIndex(Math.floorDiv(xs[i], BOX_LENGTH), Math.floorDiv(ys[i], BOX_LENGTH));
+			if (cellLast[cell] == -1)
+				cellFirst[cell] = i;
+			else
+				nextInCell[ cellLast[cell] ] = i;
+			cellLast[cell] = i;
+		}
+		boxes = new Boxes(xs, ys, nextInCell, cellFirst, numBoxes);	// publish
+
+		if (listener != null)
+			listener.setBoxNumber(numBoxes);
+		return true;
+	} // end of restore()
+
+	private int cellIndex(int col, int row)
+	// wraparound the grid, so off-panel positions still have a cell
+	{
+		return Math.floorMod(row, numRows)*numCols + Math.floorMod(col, numCols);
+	}
+
+	public int getNumObstacles() {
+		return boxes.numBoxes;
+	}
+
+	public int getBoxX(int i)
+	// the x of the i-th box added
+	{
+		return boxes.xs[i];
+	}
+
+	public int getBoxY(int i) {
+		return boxes.ys[i];
+	}
+
+	public void draw(Graphics g) {
+		draw(g, boxes.numBoxes);
+	}
+
+	public void draw(Graphics g, int numBoxes) {
+	// draw the first numBoxes boxes in blue (e.g. those in a GameState)
+		Boxes b = boxes;
+		numBoxes = Math.min(numBoxes, b.numBoxes);
+		g.setColor(Color.blue);
+		for(int i = 0; i < numBoxes; i++)
+			g.fillRect(b.xs[i], b.ys[i], BOX_LENGTH, BOX_LENGTH);
+	} // end of draw
+
+	void markCorners(int from, int to, int x0, int y0, int w, byte[] marks)
+	/* set marks[(y-y0)*w + (x-x0)] to 1 for the top-left corner (x,y)
+	   of boxes from to to-1, if it is in the w columns from x0 and the
+	   marks.length/w rows from y0; the boxes are looked at in the order
+	   they were added, which is much faster than following the grid's
+	   chains when there are very many of them */
+	{
+		Boxes b = boxes;
+		to = Math.min(to, b.numBoxes);
+		int h = marks.length / w;
+		for (int i = from; i < to; i++) {
+			int x = b.xs[i] - x0;
+			int y = b.ys[i] - y0;
+			if ((x >= 0) && (x < w) && (y >= 0) && (y < h))
+				marks[y*w + x] = 1;
+		}
+	} // end of markCorners()
+
+	public boolean hits(Point p, int size) {
+		return hits(p.x, p.y, size);
+	}
+
+	public boolean hits(int x, int y, int size)
+	// does the size*size square at (x,y) intersect any box?
+	{
+		Boxes b = boxes;
+		int[] xs = b.xs;
+		int[] ys = b.ys;
+
+		/* a box intersects the square only if its top-left corner
+		 * is less than BOX_LENGTH above/left of the square, so only
+		 * the cells holding those corners need to be checked
+		 */
+		int col0 = Math.floorDiv(x - BOX_LENGTH + 1, BOX_LENGTH);
+		int col1 = Math.floorDiv(x + size - 1, BOX_LENGTH);
+		int row0 = Math.floorDiv(y - BOX_LENGTH + 1, BOX_LENGTH);
+		int row1 = Math.floorDiv(y + size - 1, BOX_LENGTH);
+		// don't visit a wrapped cell twice when the square is wider than the grid
+		col1 = Math.min(col1, col0 + numCols - 1);
+		row1 = Math.min(row1, row0 + numRows - 1);
+
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				int i = b.cellFirst[ cellIndex(col, row) ];
+				while ((i != -1) && (i < b.numBoxes)) {
+					if ((xs[i] < x + size) && (x < xs[i] + BOX_LENGTH) &&
+						(ys[i] < y + size) && (y < ys[i] + BOX_LENGTH))
+						return true;
+					i = b.nextInCell[i];
+				}
+			}
+		}
+		return false;
+	} // end of hits()
+
+}
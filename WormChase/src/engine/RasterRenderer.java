@@ -0,0 +1,332 @@
+package engine;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Draws the background, obstacles and worm of a GameState by writing
+ * straight into the int[] pixels of a TYPE_INT_RGB image, instead of
+ * making a Java2D call per box and dot. The image is split into
+ * horizontal strips of STRIP_HEIGHT rows, which are drawn in parallel
+ * on a ForkJoinPool; a strip only writes its own rows, so the tasks
+ * need no locks. It gives the same pixels as GameState.draw() on a
+ * white background, and needs no screen.
+ *
+ * All the boxes are the same size, so they aren't filled one by one.
+ * Instead, a pixel is blue if there is a box corner less than
+ * BOX_LENGTH to its left and above it. A frame is drawn in three
+ * parallel steps, each finished before the next starts:
+ *   MARK    mark the boxes' top-left corners, in chunks of boxes;
+ *           the chunks may mark the same byte, but only ever with 1
+ *   ACROSS  per strip, mark the pixels with a corner less than
+ *           BOX_LENGTH to their left (and clear the corners)
+ *   DOWN    per strip, a pixel is in a box if it has an ACROSS mark
+ *           less than BOX_LENGTH above it; then draw the worm's dots
+ * So the time depends on the number of pixels plus the number of
+ * boxes, not on how much the boxes overlap. Rows that no box reaches
+ * are just filled with white.
+ *
+ *   java engine.RasterRenderer [frames] [boxes] [width height]
+ * times it against drawing the same with Java2D calls, headless.
+ */
+public class RasterRenderer {
+
+	private static final int STRIP_HEIGHT = 64;		// rows
+	private static final int MARK_CHUNK = 1 << 16;	// boxes
+
+	// the steps of a frame
+	private static final int MARK = 0;
+	private static final int ACROSS = 1;
+	private static final int DOWN = 2;
+
+	private static final int DOTSIZE = Worm.DOTSIZE;
+	private static final int BOX_LENGTH = Obstacles.BOX_LENGTH;
+	private static final int MARGIN = BOX_LENGTH-1;	// corners off the strip that reach into it
+
+	private static final int BACKGROUND_RGB = Color.white.getRGB();
+	private static final int BOX_RGB = Color.blue.getRGB();
+	private static final int BODY_RGB = Color.black.getRGB();
+	private static final int HEAD_RGB = Color.red.getRGB();
+
+	private int pWidth, pHeight;
+	private ForkJoinPool pool;
+
+	private BufferedImage image;
+	private int[] pixels;		// the image's pixels, a row at a time
+
+	// the columns of the dot's row r, as drawn by fillOval(), are dotStarts[r] to dotEnds[r]-1
+	private int[] dotStarts, dotEnds;
+
+	/* the box corners, and then the ACROSS marks, for the image and
+	   the MARGIN columns to its left and rows above it, a row of
+	   markWidth at a time */
+	private int markWidth, markHeight;
+	private byte[] corners, spans;
+	private int[] rowFrames;	// the last frame in which a mark row had a corner
+	private int frameNo = 0;
+
+	private Strip[] strips;
+
+	// what the current render() draws
+	private GameState state;
+	private double alpha;
+
+	public RasterRenderer(int pWidth, int pHeight, ForkJoinPool pool) {
+		this.pWidth = pWidth;
+		this.pHeight = pHeight;
+		this.pool = pool;
+
+		image = new BufferedImage(pWidth, pHeight, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		makeDotSpans();
+
+		markWidth = pWidth + MARGIN;
+		markHeight = pHeight + MARGIN;
+		corners = new byte[markWidth * markHeight];
+		spans = new byte[markWidth * markHeight];
+		rowFrames = new int[markHeight];
+
+		int numStrips = (pHeight + STRIP_HEIGHT-1) / STRIP_HEIGHT;
+		strips = new Strip[numStrips];
+		for (int i = 0; i < numStrips; i++)
+			strips[i] = new Strip(i*STRIP_HEIGHT, Math.min((i+1)*STRIP_HEIGHT, pHeight));
+	} // end of RasterRenderer()
+
+	public RasterRenderer(int pWidth, int pHeight) {
+		this(pWidth, pHeight, ForkJoinPool.commonPool());
+	}
+
+	private void makeDotSpans()
+	// find which pixels of each row fillOval() sets for a dot
+	{
+		BufferedImage im = new BufferedImage(DOTSIZE, DOTSIZE, BufferedImage.TYPE_INT_ARGB);
+		Graphics g = im.getGraphics();
+		g.setColor(Color.black);
+		g.fillOval(0, 0, DOTSIZE, DOTSIZE);
+		g.dispose();
+
+		dotStarts = new int[DOTSIZE];
+		dotEnds = new int[DOTSIZE];
+		for (int r = 0; r < DOTSIZE; r++) {
+			int c = 0;
+			while ((c < DOTSIZE) && ((im.getRGB(c, r) >>> 24) == 0))
+				c++;
+			dotStarts[r] = c;
+			while ((c < DOTSIZE) && ((im.getRGB(c, r) >>> 24) != 0))
+				c++;
+			dotEnds[r] = c;		// an oval's rows have no gaps
+		}
+	} // end of makeDotSpans()
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public void render(GameState state, double alpha)
+	/* draw the background, the obstacles and the worm into the image,
+	   with the head alpha (0-1) of the way along its last step */
+	{
+		this.state = state;
+		this.alpha = alpha;
+		frameNo++;
+		int numChunks = (state.getNumBoxes() + MARK_CHUNK-1) / MARK_CHUNK;
+		if (numChunks > 0)
+			pool.invoke( new StepTask(MARK, 0, numChunks) );
+		pool.invoke( new StepTask(ACROSS, 0, strips.length) );
+		pool.invoke( new StepTask(DOWN, 0, strips.length) );
+		this.state = null;
+	} // end of render()
+
+	private class StepTask extends RecursiveAction
+	// do one step for chunks or strips lo to hi-1
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int step, lo, hi;
+
+		StepTask(int step, int lo, int hi) {
+			this.step = step;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute() {
+			if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll( new StepTask(step, lo, mid), new StepTask(step, mid, hi) );
+			}
+			else if (step == MARK)
+				state.getObstacles().markCorners(lo*MARK_CHUNK,
+						Math.min((lo+1)*MARK_CHUNK, state.getNumBoxes()),
+						-MARGIN, -MARGIN, markWidth, corners);
+			else if (step == ACROSS)
+				strips[lo].markAcross();
+			else {
+				strips[lo].fillDown();
+				strips[lo].drawWorm();
+			}
+		} // end of compute()
+	} // end of StepTask class
+
+	// ---------------------------------------------------------------
+
+	private class Strip {
+		private final int y0, y1;		// the strip's rows are y0 to y1-1
+		private final int[] lastRow;	// per column, the last mark row with an ACROSS mark
+
+		Strip(int y0, int y1) {
+			this.y0 = y0;
+			this.y1 = y1;
+			lastRow = new int[markWidth];
+		}
+
+		void markAcross()
+		/* for the strip's own rows of marks (the first strip also
+		   has the MARGIN rows above the image), mark the pixels with
+		   a corner less than BOX_LENGTH to their left, and clear the
+		   corners for the next frame */
+		{
+			int from = (y0 == 0) ? 0 : y0 + MARGIN;
+			for (int m = from; m < y1 + MARGIN; m++) {
+				int k = m*markWidth;
+				int c = 0;
+				while ((c < markWidth) && (corners[k+c] == 0))
+					c++;
+				if (c == markWidth)
+					continue;	// no corners, so fillDown() won't look at the row
+				rowFrames[m] = frameNo;
+				Arrays.fill(spans, k, k+c, (byte) 0);
+				int last = -BOX_LENGTH;
+				for (; c < markWidth; c++) {
+					if (corners[k+c] != 0) {
+						last = c;
+						corners[k+c] = 0;
+					}
+					spans[k+c] = (byte) ((c - last < BOX_LENGTH) ? 1 : 0);
+				}
+			}
+		} // end of markAcross()
+
+		void fillDown()
+		/* fill the strip's pixels, blue if there is an ACROSS mark less
+		   than BOX_LENGTH above, white otherwise; the marks for row y
+		   are in mark row y+MARGIN, so the strip's pixels need mark
+		   rows y0 to y1+MARGIN-1, including the strip above's last few */
+		{
+			Arrays.fill(lastRow, -BOX_LENGTH);
+			int lastMarked = -BOX_LENGTH;	// the last mark row with any ACROSS marks
+			for (int m = y0; m < y1 + MARGIN; m++) {
+				int k = m*markWidth;
+				if (rowFrames[m] == frameNo) {
+					lastMarked = m;
+					for (int c = MARGIN; c < markWidth; c++) {
+						if (spans[k+c] != 0)
+							lastRow[c] = m;
+					}
+				}
+				if (m < y0 + MARGIN)
+					continue;	// above the strip
+
+				int p = (m - MARGIN)*pWidth - MARGIN;	// the pixel for column c is p+c
+				if (m - lastMarked >= BOX_LENGTH)	// no box reaches this row
+					Arrays.fill(pixels, p + MARGIN, p + markWidth, BACKGROUND_RGB);
+				else {
+					for (int c = MARGIN; c < markWidth; c++)
+						pixels[p+c] = (m - lastRow[c] < BOX_LENGTH) ? BOX_RGB : BACKGROUND_RGB;
+				}
+			}
+		} // end of fillDown()
+
+		private void drawWorm()
+		// draw the dots that reach into the strip, the body then the head
+		{
+			int numDots = state.getNumDots();
+			if (numDots == 0)
+				return;
+			int head = numDots-1;
+			for (int i = 0; i < head; i++) {
+				int y = state.getDotY(i);
+				if ((y < y1) && (y + DOTSIZE > y0))
+					drawDot(state.getDotX(i), y, BODY_RGB);
+			}
+			drawDot(state.getHeadX(alpha), state.getHeadY(alpha), HEAD_RGB);
+		} // end of drawWorm()
+
+		private void drawDot(int x, int y, int rgb)
+		// fill the dot's rows that are in the strip, clipped to the image
+		{
+			int r0 = Math.max(y, y0);
+			int r1 = Math.min(y + DOTSIZE, y1);
+			for (int py = r0; py < r1; py++) {
+				int from = Math.max(x + dotStarts[py-y], 0);
+				int to = Math.min(x + dotEnds[py-y], pWidth);
+				if (from < to)
+					Arrays.fill(pixels, py*pWidth + from, py*pWidth + to, rgb);
+			}
+		} // end of drawDot()
+
+	} // end of Strip class
+
+	// ---------------------------------------------------------------
+
+	public static void main(String[] args)
+	// time both renderers on a game with many boxes, with no screen
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		int numFrames = 200;
+		int numBoxes = 1000000;
+		int pWidth = 1024;
+		int pHeight = 768;
+		if (args.length > 0)
+			numFrames = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			numBoxes = Integer.parseInt(args[1]);
+		if (args.length > 3) {
+			pWidth = Integer.parseInt(args[2]);
+			pHeight = Integer.parseInt(args[3]);
+		}
+
+		WormEngine engine = new WormEngine(pWidth, pHeight, new ManualClock(), null, 42L);
+		Random rand = new Random(42);
+		for (int i = 0; i < numBoxes; i++)
+			engine.getObstacles().add(rand.nextInt(pWidth), rand.nextInt(pHeight));
+		engine.advance(100);	// grow the worm to its full length
+		GameState state = new GameState();
+
+		RasterRenderer raster = new RasterRenderer(pWidth, pHeight);
+		BufferedImage image = new BufferedImage(pWidth, pHeight, BufferedImage.TYPE_INT_RGB);
+		Graphics g = image.getGraphics();
+
+		long rasterTime = 0;
+		long java2DTime = 0;
+		for (int i = 0; i < numFrames; i++) {
+			engine.tick();
+			engine.snapshot(state);
+
+			long startTime = System.nanoTime();
+			raster.render(state, 1.0);
+			rasterTime += System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			g.setColor(Color.white);		// a fillRect() per box and a fillOval() per dot
+			g.fillRect(0, 0, pWidth, pHeight);
+			state.draw(g, 1.0);
+			java2DTime += System.nanoTime() - startTime;
+		}
+		g.dispose();
+
+		DecimalFormat df = new DecimalFormat("0.###");
+		System.out.println(numFrames + " frames of " + pWidth + "x" + pHeight + " with " +
+							numBoxes + " boxes, on " + raster.pool.getParallelism() + " threads");
+		System.out.println("Raster: " + df.format(rasterTime/1000000.0/numFrames) + " ms/frame");
+		System.out.println("Java2D: " + df.format(java2DTime/1000000.0/numFrames) + " ms/frame");
+	} // end of main()
+
+}
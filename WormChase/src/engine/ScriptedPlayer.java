@@ -0,0 +1,135 @@
+package engine;
+
+import java.util.SplittableRandom;
+
+/* A computer player for headless games, such as Tournament's. act() is
+ * called before every tick, on the ticking thread, and clicks by
+ * calling engine.testPress() directly. Each player has its own random
+ * numbers, so a game with the same seeds plays the same way.
+ *
+ *   random   clicks anywhere, a few times a second
+ *   wall     builds a short wall across the worm's path, then chases it
+ *   chaser   clicks where it last saw the head, with a human-like
+ *            delay and aim, until it catches the worm
+ */
+public abstract class ScriptedPlayer {
+
+	public static final String[] NAMES = { "random", "wall", "chaser" };
+
+	protected SplittableRandom rand;
+
+	protected ScriptedPlayer(long seed) {
+		rand = new SplittableRandom(seed);
+	}
+
+	public abstract void act(WormEngine engine, long tick);
+
+	public static ScriptedPlayer create(String name, long seed)
+	// return a new player called name, or null if there is no such player
+	{
+		if (name.equals("random"))
+			return new RandomClicker(seed);
+		else if (name.equals("wall"))
+			return new WallBuilder(seed);
+		else if (name.equals("chaser"))
+			return new HeadChaser(seed);
+		else
+			return null;
+	} // end of create()
+
+	// ---------------------------------------------------------------
+
+	static class RandomClicker extends ScriptedPlayer {
+		private static final int CLICK_TICKS = 20;	// a click every 1/4 sec at 80 UPS
+
+		RandomClicker(long seed) {
+			super(seed);
+		}
+
+		public void act(WormEngine engine, long tick) {
+			if ((tick % CLICK_TICKS) == 0) {
+				engine.testPress(rand.nextInt(engine.getWidth()), rand.nextInt(engine.getHeight()));
+			}
+		}
+	} // end of RandomClicker class
+
+	// ---------------------------------------------------------------
+
+	static class HeadChaser extends ScriptedPlayer {
+		private static final int CLICK_TICKS = 24;	// a click every 0.3 secs at 80 UPS
+		private static final int LAG_TICKS = 16;	// sees the head 0.2 secs late
+		private static final int AIM_ERROR = 16;	// clicks up to this many pixels off
+
+		// where the head has been, for the last LAG_TICKS ticks
+		private int[] seenXs = new int[LAG_TICKS];
+		private int[] seenYs = new int[LAG_TICKS];
+		private int numSeen = 0;
+
+		HeadChaser(long seed) {
+			super(seed);
+		}
+
+		public void act(WormEngine engine, long tick) {
+			Worm fred = engine.getWorm();
+			if (fred.getLength() == 0)
+				return;
+			int i = (int) (tick % LAG_TICKS);
+			int lateX = seenXs[i];		// the head LAG_TICKS ago
+			int lateY = seenYs[i];
+			seenXs[i] = fred.getHeadX() + Worm.DOTSIZE/2;
+			seenYs[i] = fred.getHeadY() + Worm.DOTSIZE/2;
+			if (numSeen < LAG_TICKS) {
+				numSeen++;
+				return;
+			}
+			if ((tick % CLICK_TICKS) == 0)
+				engine.testPress(lateX + aimError(), lateY + aimError());
+		} // end of act()
+
+		protected int aimError() {
+			return rand.nextInt(2*AIM_ERROR + 1) - AIM_ERROR;
+		}
+	} // end of HeadChaser class
+
+	// ---------------------------------------------------------------
+
+	static class WallBuilder extends HeadChaser {
+		private static final int WALL_BOXES = 12;
+		private static final int BUILD_TICKS = 6;
+		private static final int AHEAD = 4;		// dots in front of the head
+
+		private int prevHeadX, prevHeadY;
+		private int numBuilt = 0;
+
+		WallBuilder(long seed) {
+			super(seed);
+		}
+
+		public void act(WormEngine engine, long tick) {
+			Worm fred = engine.getWorm();
+			if (numBuilt >= WALL_BOXES) {
+				super.act(engine, tick);	// the wall is done, so chase the head
+				return;
+			}
+			if (fred.getLength() == 0)
+				return;
+
+			int headX = fred.getHeadX();
+			int headY = fred.getHeadY();
+			if (((tick % BUILD_TICKS) == 0) && (fred.getLength() > 1)) {
+				/* put the next box AHEAD dots along the worm's last step,
+				   moved sideways so the boxes line up across its path */
+				int dx = Integer.signum(headX - prevHeadX);
+				int dy = Integer.signum(headY - prevHeadY);
+				int side = (numBuilt % 3) - 1;		// -1, 0, 1
+				int x = headX + Worm.DOTSIZE*(AHEAD*dx - side*dy);
+				int y = headY + Worm.DOTSIZE*(AHEAD*dy + side*dx);
+				engine.testPress(x, y);
+				numBuilt++;
+			}
+			prevHeadX = headX;
+			prevHeadY = headY;
+		} // end of act()
+	} // end of WallBuilder class
+
+}
@@ -0,0 +1,207 @@
+package engine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+
+/* Watches a game streamed by a SpectatorServer, keeping its own copy
+ * of the counters, the worm's dots and the boxes, as described in
+ * SpectatorServer.
+ *
+ *   java engine.SpectatorClient [host] [port]
+ * prints the game's progress once a second, until the game stops.
+ */
+public class SpectatorClient {
+
+	private DataInputStream in;
+
+	private int pWidth, pHeight;
+	private long tickCount;
+	private int score, timeSpent;
+	private int flags;
+	private boolean synced = false;		// has had a FULL message
+
+	// the worm's dots, in a ring from the tail to the head
+	private int[] dotXs = new int[64];
+	private int[] dotYs = new int[64];
+	private int tail = 0;
+	private int numDots = 0;
+
+	private int[] boxXs = new int[64];
+	private int[] boxYs = new int[64];
+	private int numBoxes = 0;
+
+	public SpectatorClient(String host, int port) throws IOException {
+		Socket sock = new Socket(host, port);
+		sock.setTcpNoDelay(true);
+		in = new DataInputStream( new BufferedInputStream(sock.getInputStream()) );
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	public boolean readMessage() throws IOException
+	// read and apply the next message; false once the game has stopped
+	{
+		try {
+			in.readInt();		// the length; every field is read anyway
+		}
+		catch (EOFException e) {
+			return false;
+		}
+		int type = in.readByte();
+		if (type == SpectatorServer.FULL) {
+			pWidth = in.readInt();
+			pHeight = in.readInt();
+			readCounters();
+			tail = 0;
+			numDots = 0;
+			int n = in.readInt();
+			for (int i = 0; i < n; i++)
+				addDot(in.readShort(), in.readShort());
+			numBoxes = 0;
+			readBoxes();
+			synced = true;
+		}
+		else if (type == SpectatorServer.TICK) {
+			readCounters();
+			int length = in.readInt();
+			int x = in.readShort();
+			int y = in.readShort();
+			if ((flags & SpectatorServer.MOVED) != 0)
+				addDot(x, y);
+			while (numDots > length) {	// the tail moved up
+				tail = (tail+1) % dotXs.length;
+				numDots--;
+			}
+			readBoxes();
+		}
+		else
+			throw new IOException("unknown message type: " + type);
+		return true;
+	} // end of readMessage()
+
+	private void readCounters() throws IOException {
+		tickCount = in.readLong();
+		score = in.readInt();
+		timeSpent = in.readInt();
+		flags = in.readByte();
+	}
+
+	private void addDot(int x, int y) {
+		if (numDots == dotXs.length) {		// make room, putting the tail at 0
+			int[] newXs = new int[dotXs.length*2];
+			int[] newYs = new int[dotYs.length*2];
+			for (int n = 0; n < numDots; n++) {
+				newXs[n] = dotXs[(tail+n) % dotXs.length];
+				newYs[n] = dotYs[(tail+n) % dotYs.length];
+			}
+			dotXs = newXs;
+			dotYs = newYs;
+			tail = 0;
+		}
+		int i = (tail + numDots) % dotXs.length;
+		dotXs[i] = x;
+		dotYs[i] = y;
+		numDots++;
+	} // end of addDot()
+
+	private void readBoxes() throws IOException {
+		int n = in.readInt();
+		if (numBoxes + n > boxXs.length) {
+			int size = Math.max(boxXs.length*2, numBoxes + n);
+			boxXs = Arrays.copyOf(boxXs, size);
+			boxYs = Arrays.copyOf(boxYs, size);
+		}
+		for (int i = 0; i < n; i++) {
+			boxXs[numBoxes] = in.readInt();
+			boxYs[numBoxes] = in.readInt();
+			numBoxes++;
+		}
+	} // end of readBoxes()
+
+	public boolean isSynced() {
+		return synced;
+	}
+
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public int getTimeSpent() {
+		return timeSpent;
+	}
+
+	public boolean isPaused() {
+		return (flags & SpectatorServer.PAUSED) != 0;
+	}
+
+	public boolean isGameOver() {
+		return (flags & SpectatorServer.GAME_OVER) != 0;
+	}
+
+	public int getWidth() {
+		return pWidth;
+	}
+
+	public int getHeight() {
+		return pHeight;
+	}
+
+	public int getLength() {
+		return numDots;
+	}
+
+	public int copyDots(int[] xs, int[] ys)
+	// like Worm.copyDots(): tail first and head last
+	{
+		for (int n = 0; n < numDots; n++) {
+			xs[n] = dotXs[(tail+n) % dotXs.length];
+			ys[n] = dotYs[(tail+n) % dotYs.length];
+		}
+		return numDots;
+	} // end of copyDots()
+
+	public int getNumObstacles() {
+		return numBoxes;
+	}
+
+	public int getBoxX(int i) {
+		return boxXs[i];
+	}
+
+	public int getBoxY(int i) {
+		return boxYs[i];
+	}
+
+	public static void main(String[] args) {
+		String host = (args.length > 0) ? args[0] : "localhost";
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : 7171;
+		try {
+			SpectatorClient client = new SpectatorClient(host, port);
+			int lastSecs = -1;
+			while (client.readMessage()) {
+				if (client.getTimeSpent() != lastSecs) {
+					lastSecs = client.getTimeSpent();
+					System.out.println("Tick " + client.getTickCount() + ", " + lastSecs + " secs: score " +
+							client.getScore() + ", worm " + client.getLength() + " dots, " +
+							client.getNumObstacles() + " boxes" + (client.isPaused() ? ", paused" : "") +
+							(client.isGameOver() ? ", game over" : ""));
+				}
+			}
+			System.out.println("Game stopped");
+			client.close();
+		}
+		catch (IOException e)
+		{	System.out.println("Spectating " + host + ":" + port + " failed: " + e); }
+	} // end of main()
+
+}
@@ -0,0 +1,511 @@
+package engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Streams a game to any number of spectators over TCP, tick by tick,
+ * from one thread using a NIO Selector, so there is no thread per
+ * connection and a spectator can never hold up the game.
+ *
+ * The ticking thread calls publish() after each tick. It snapshots
+ * the game into a TripleBuffer of GameStates (which only copies the
+ * worm's new dots), and encodes a small TICK message into one of the
+ * reused buffers of a ring with one producer and one consumer, like
+ * TelemetryWriter's. It never allocates or waits, and only wakes the
+ * selector if it isn't already awake.
+ *
+ * The selector thread copies each TICK into a pooled message shared
+ * (not copied) by every spectator's queue, and writes as much as each
+ * socket will take. A spectator that is new, or has missed a tick,
+ * needs a FULL message: the selector thread makes one from the newest
+ * GameState, which is never older than the TICKs already sent, and
+ * the spectator then skips the TICKs up to the state's tick. Only one
+ * FULL at a time is queued for a spectator. A spectator with more
+ * than MAX_BACKLOG bytes still waiting to go (not counting a FULL it
+ * is being sent, and on top of a SEND_BUFFER that is full) is too
+ * slow, and is dropped.
+ *
+ * Every message is an int length, then a type byte and its data
+ * (big-endian, as DataInputStream reads it):
+ *   FULL  panel width, height (ints), tick (long), score, time spent
+ *         (ints), flags (byte), no. of dots (int), the dots' x, y
+ *         (shorts, tail first), no. of boxes (int), the boxes' x, y
+ *         (ints)
+ *   TICK  tick (long), score, time spent (ints), flags (byte), worm
+ *         length (int), head x, y (shorts), no. of new boxes (int),
+ *         their x, y (ints)
+ * The flags are PAUSED, GAME_OVER, and MOVED if the worm moved to the
+ * new head in that tick (and then lost any tail dots past its length).
+ * A spectator gets a FULL, then a TICK for each tick after it, and
+ * another FULL (which replaces everything) whenever it would otherwise
+ * miss a tick. SpectatorClient reads the stream.
+ *
+ * The panels start a server on the port given by -Dwormchase.spectators.
+ */
+public class SpectatorServer implements Runnable {
+
+	static final int FULL = 1;
+	static final int TICK = 2;
+
+	static final int PAUSED = 1;		// flags
+	static final int GAME_OVER = 2;
+	static final int MOVED = 4;
+
+	private static final int TICK_SIZE = 4 + 1 + 8 + 2*4 + 1 + 4 + 2*2 + 4;	// with no new boxes
+	private static final int FULL_HEADER_SIZE = 4 + 1 + 2*4 + 8 + 2*4 + 1 + 4 + 4;
+
+	private static final int RING_SIZE = 1024;		// messages; a power of 2
+	private static final int POOLED_SIZE = 256;		// bytes in a reused message buffer
+	private static final int MAX_BACKLOG = 16*1024;	// bytes per spectator, ~6 secs of TICKs at 80 UPS
+	private static final int SEND_BUFFER = 64*1024;	// bytes per socket, so the OS doesn't hide a slow spectator
+
+	private ServerSocketChannel server;
+	private Selector selector;
+	private Thread selectorThread;
+	private volatile boolean running = true;
+
+	// TICKs from the ticking thread to the selector thread
+	private ByteBuffer[] ring = new ByteBuffer[RING_SIZE];
+	private AtomicLong head = new AtomicLong(0);	// next message to fill; written by the ticking thread
+	private AtomicLong tail = new AtomicLong(0);	// next message to send; written by the selector thread
+	private AtomicBoolean wakeupPending = new AtomicBoolean(false);
+
+	// the game, from the ticking thread to the selector thread, for FULLs
+	private TripleBuffer<GameState> states;
+	private volatile int pWidth, pHeight;
+
+	private volatile int numClients = 0;
+
+	// only used by the ticking thread
+	private int lastNumBoxes = 0;
+	private long numLost = 0;
+
+	// only used by the selector thread
+	private ArrayList<Client> clients = new ArrayList<Client>();
+	private ArrayDeque<Message> pool = new ArrayDeque<Message>();	// free POOLED_SIZE messages
+	private boolean fullsWanted = false;		// some spectator needs a FULL
+	private ByteBuffer readBuf = ByteBuffer.allocate(256);	// spectators' input is ignored
+	private int numServed = 0;
+	private int numDropped = 0;
+
+	private static class Message {
+		final ByteBuffer buf;
+		int length;
+		long tick;
+		boolean isFull;
+		int refs;		// the queues it is in
+
+		Message(int capacity) {
+			buf = ByteBuffer.allocate(capacity);
+		}
+	} // end of Message class
+
+	private static class Client {
+		final SocketChannel channel;
+		final SelectionKey key;
+		final ArrayDeque<Message> queue = new ArrayDeque<Message>();
+		int sent = 0;			// bytes of the first queued message already written
+		int queuedBytes = 0;	// bytes of the queued messages, including those sent
+		int allowance = MAX_BACKLOG;	// most queuedBytes, with room for a FULL
+		boolean needsFull = true;
+		long nextTick;			// the TICK to send next, once it has had a FULL
+		boolean closed = false;
+
+		Client(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+		}
+	} // end of Client class
+
+	public SpectatorServer(int port) throws IOException {
+		for (int i = 0; i < RING_SIZE; i++)
+			ring[i] = ByteBuffer.allocate(POOLED_SIZE);
+		states = new TripleBuffer<GameState>(new GameState(), new GameState(), new GameState());
+
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+
+		selectorThread = new Thread(this, "WormChase spectators");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	} // end of SpectatorServer()
+
+	public static SpectatorServer startIfRequested(WormEngine engine)
+	/* start a server on the port given by the wormchase.spectators
+	   property, and have engine publish to it; otherwise return null */
+	{
+		Integer port = Integer.getInteger("wormchase.spectators");
+		if (port == null)
+			return null;
+		try {
+			SpectatorServer spectators = new SpectatorServer(port);
+			engine.setSpectators(spectators);
+			System.out.println("Spectators can connect to port " + spectators.getPort());
+			return spectators;
+		}
+		catch (IOException e) {
+			System.out.println("Could not start spectator server on port " + port + ": " + e);
+			return null;
+		}
+	} // end of startIfRequested()
+
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	public int getNumClients() {
+		return numClients;
+	}
+
+	// ------------------- the ticking thread -------------------------
+
+	public void publish(WormEngine engine)
+	// send the state after the engine's latest tick; never allocates or blocks
+	{
+		pWidth = engine.getWidth();
+		pHeight = engine.getHeight();
+		engine.snapshot(states.getBack());
+		states.publish();		// before the TICK, so a FULL is never older than a TICK sent
+
+		int numBoxes = engine.getNumObstacles();
+		if (numClients == 0) {
+			lastNumBoxes = numBoxes;
+			return;
+		}
+		long h = head.get();
+		if (h - tail.get() >= RING_SIZE) {	// the selector thread is far behind
+			numLost++;		// the spectators will see a missing tick
+			lastNumBoxes = numBoxes;
+			return;
+		}
+		int i = (int) (h & (RING_SIZE-1));
+		int size = TICK_SIZE + 2*4*(numBoxes - lastNumBoxes);
+		if (ring[i].capacity() < size)
+			ring[i] = ByteBuffer.allocate(size);	// only for many boxes in one tick
+		putTick(ring[i], engine, numBoxes);
+		lastNumBoxes = numBoxes;
+		head.lazySet(h+1);		// publish the message
+		if (wakeupPending.compareAndSet(false, true))
+			selector.wakeup();
+	} // end of publish()
+
+	private void putTick(ByteBuffer msg, WormEngine engine, int numBoxes) {
+		Worm fred = engine.getWorm();
+		Obstacles obs = engine.getObstacles();
+		boolean moved = !engine.isPaused() && !engine.isGameOver() && (fred.getLength() > 0);
+		int flags = moved ? MOVED : 0;
+		if (engine.isPaused())
+			flags |= PAUSED;
+		if (engine.isGameOver())
+			flags |= GAME_OVER;
+
+		msg.clear();
+		msg.putInt(TICK_SIZE - 4 + 2*4*(numBoxes - lastNumBoxes));
+		msg.put((byte) TICK);
+		msg.putLong(engine.getTickCount());
+		msg.putInt(engine.getScore());
+		msg.putInt(engine.getTimeSpent());
+		msg.put((byte) flags);
+		msg.putInt(fred.getLength());
+		msg.putShort((short) (moved ? fred.getHeadX() : 0));
+		msg.putShort((short) (moved ? fred.getHeadY() : 0));
+		putBoxes(msg, obs, lastNumBoxes, numBoxes);
+		msg.flip();
+	} // end of putTick()
+
+	private static void putBoxes(ByteBuffer msg, Obstacles obs, int from, int to) {
+		msg.putInt(to - from);
+		for (int i = from; i < to; i++) {
+			msg.putInt(obs.getBoxX(i));
+			msg.putInt(obs.getBoxY(i));
+		}
+	}
+
+	public void close()
+	/* called by the game thread once it has stopped publishing; closes
+	   all the connections */
+	{
+		running = false;
+		selector.wakeup();
+		try {
+			selectorThread.join();
+		}
+		catch (InterruptedException e) {}
+		System.out.println("Spectators served/dropped as too slow: " + numServed + " / " +
+							numDropped + "; messages lost: " + numLost);
+	} // end of close()
+
+	// ------------------- the selector thread ------------------------
+
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				wakeupPending.set(false);	// before draining, so no message is missed
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable())
+						accept();
+					else {
+						Client client = (Client) key.attachment();
+						if (key.isReadable())
+							discardInput(client);
+						if (key.isValid() && key.isWritable())
+							flush(client);
+					}
+				}
+				drainRing();
+				sendFulls();
+				removeClosed();
+			}
+			drainRing();		// what was published before close()
+		}
+		catch (IOException e)
+		{	System.out.println("Spectator server error: " + e); }
+
+		for (int i = 0; i < clients.size(); i++)
+			closeClient(clients.get(i));
+		try {
+			server.close();
+			selector.close();
+		}
+		catch (IOException e) {}
+	} // end of run()
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER);
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		Client client = new Client(channel, key);
+		key.attach(client);
+		clients.add(client);
+		numServed++;
+		numClients = clients.size();
+		fullsWanted = true;
+	} // end of accept()
+
+	private void discardInput(Client client)
+	// spectators have nothing to say, but a read of -1 means they've gone
+	{
+		try {
+			readBuf.clear();
+			if (client.channel.read(readBuf) == -1)
+				closeClient(client);
+		}
+		catch (IOException e)
+		{	closeClient(client); }
+	} // end of discardInput()
+
+	private void drainRing()
+	// give every published TICK to the spectators
+	{
+		long t = tail.get();
+		long h = head.get();
+		while (t < h) {
+			ByteBuffer buf = ring[ (int) (t & (RING_SIZE-1)) ];
+			Message msg = getMessage(buf.remaining());
+			msg.buf.put(buf);
+			msg.length = msg.buf.position();
+			msg.tick = msg.buf.getLong(5);
+			msg.isFull = false;
+			t++;
+			tail.lazySet(t);		// free the slot
+
+			msg.refs = 1;		// so it isn't freed while being delivered
+			for (int c = 0; c < clients.size(); c++)
+				deliverTick(clients.get(c), msg);
+			release(msg);
+		}
+	} // end of drainRing()
+
+	private void deliverTick(Client client, Message msg) {
+		if (client.closed || client.needsFull || (msg.tick < client.nextTick))
+			return;		// waiting for a FULL, or the TICK is older than its FULL
+		if (msg.tick > client.nextTick) {	// missed a tick
+			client.needsFull = true;
+			fullsWanted = true;
+			return;
+		}
+		client.nextTick++;
+		enqueue(client, msg);
+	} // end of deliverTick()
+
+	private void sendFulls()
+	// send a FULL made from the newest game state to the spectators that need one
+	{
+		if (!fullsWanted)
+			return;
+		GameState state = states.getFront();
+		if (state.getObstacles() == null)
+			return;		// nothing published yet; try again after the next tick
+		fullsWanted = false;
+
+		Message msg = makeFull(state);
+		msg.refs = 1;
+		for (int c = 0; c < clients.size(); c++) {
+			Client client = clients.get(c);
+			if (client.closed || !client.needsFull)
+				continue;
+			dropUnsent(client);		// the FULL replaces them
+			client.allowance = client.queuedBytes + msg.length + MAX_BACKLOG;
+			client.needsFull = false;
+			client.nextTick = msg.tick + 1;
+			enqueue(client, msg);
+		}
+		release(msg);
+	} // end of sendFulls()
+
+	private Message makeFull(GameState state) {
+		int numDots = state.getNumDots();
+		int numBoxes = state.getNumBoxes();
+		Message msg = getMessage(FULL_HEADER_SIZE + 2*2*numDots + 2*4*numBoxes);
+		ByteBuffer buf = msg.buf;
+		int flags = 0;
+		if (state.isPaused())
+			flags |= PAUSED;
+		if (state.isGameOver())
+			flags |= GAME_OVER;
+
+		buf.putInt(FULL_HEADER_SIZE - 4 + 2*2*numDots + 2*4*numBoxes);
+		buf.put((byte) FULL);
+		buf.putInt(pWidth);
+		buf.putInt(pHeight);
+		buf.putLong(state.getTickCount());
+		buf.putInt(state.getScore());
+		buf.putInt(state.getTimeSpent());
+		buf.put((byte) flags);
+		buf.putInt(numDots);
+		for (int i = 0; i < numDots; i++) {
+			buf.putShort((short) state.getDotX(i));
+			buf.putShort((short) state.getDotY(i));
+		}
+		putBoxes(buf, state.getObstacles(), 0, numBoxes);
+
+		msg.length = buf.position();
+		msg.tick = state.getTickCount();
+		msg.isFull = true;
+		return msg;
+	} // end of makeFull()
+
+	private void enqueue(Client client, Message msg) {
+		if (client.queuedBytes + msg.length > client.allowance) {	// too slow
+			numDropped++;
+			closeClient(client);
+			return;
+		}
+		boolean idle = client.queue.isEmpty();
+		client.queue.add(msg);
+		msg.refs++;
+		client.queuedBytes += msg.length;
+		if (idle)
+			flush(client);
+	} // end of enqueue()
+
+	private void flush(Client client)
+	/* write the client's queued messages until the socket won't take
+	   any more; then wait for it to be writable again */
+	{
+		try {
+			while (!client.queue.isEmpty()) {
+				Message msg = client.queue.peek();
+				ByteBuffer buf = msg.buf;		// only this thread moves its position
+				buf.limit(msg.length);
+				buf.position(client.sent);
+				client.channel.write(buf);
+				client.sent = buf.position();
+				if (client.sent < msg.length) {
+					client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+				client.queue.poll();
+				client.sent = 0;
+				client.queuedBytes -= msg.length;
+				if (msg.isFull)
+					client.allowance = MAX_BACKLOG;
+				release(msg);
+			}
+			client.key.interestOps(SelectionKey.OP_READ);
+		}
+		catch (IOException e)
+		{	closeClient(client); }
+	} // end of flush()
+
+	private void dropUnsent(Client client)
+	// drop the client's queued messages, except one partly written
+	{
+		Message partial = (client.sent > 0) ? client.queue.poll() : null;
+		while (!client.queue.isEmpty()) {
+			Message msg = client.queue.poll();
+			client.queuedBytes -= msg.length;
+			release(msg);
+		}
+		if (partial != null)
+			client.queue.add(partial);
+	} // end of dropUnsent()
+
+	private Message getMessage(int size)
+	// an empty message with room for size bytes, reused if it's small
+	{
+		Message msg = (size <= POOLED_SIZE) ? pool.poll() : null;
+		if (msg == null)
+			msg = new Message( Math.max(size, POOLED_SIZE) );
+		msg.buf.clear();
+		return msg;
+	} // end of getMessage()
+
+	private void release(Message msg)
+	// one less queue holds msg; reuse it when none do
+	{
+		msg.refs--;
+		if ((msg.refs == 0) && (msg.buf.capacity() == POOLED_SIZE))
+			pool.add(msg);
+	}
+
+	private void removeClosed()
+	// take out the spectators closed since the last time
+	{
+		for (int c = clients.size()-1; c >= 0; c--) {
+			if (clients.get(c).closed)
+				clients.remove(c);
+		}
+		numClients = clients.size();
+	} // end of removeClosed()
+
+	private void closeClient(Client client) {
+		if (client.closed)
+			return;
+		client.closed = true;
+		while (!client.queue.isEmpty())
+			release(client.queue.poll());
+		client.queuedBytes = 0;
+		client.key.cancel();
+		try {
+			client.channel.close();
+		}
+		catch (IOException e) {}
+	} // end of closeClient()
+
+}
@@ -0,0 +1,89 @@
+package engine;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/* The worm's body and head dots, each drawn once into a small image
+ * and then copied wherever a dot is needed. Copying an image is much
+ * cheaper than running fillOval() through the shape rasterizer for
+ * every dot of every frame. The images are made compatible with the
+ * screen (when there is one), so Java2D can keep accelerated copies of
+ * them; they are redrawn if the dot size or a color is changed.
+ *
+ * The obstacle boxes are not cached: a box is a plain fillRect(),
+ * which is already cheaper than copying an image of it.
+ */
+public class SpriteCache {
+
+	private int dotSize;
+	private Color bodyColor, headColor;
+
+	private BufferedImage bodyDot, headDot;	// null until needed
+
+	public SpriteCache(int dotSize) {
+		this.dotSize = dotSize;
+		bodyColor = Color.black;
+		headColor = Color.red;
+	}
+
+	public SpriteCache() {
+		this(Worm.DOTSIZE);
+	}
+
+	public void setDotSize(int size) {
+		if (size != dotSize) {
+			dotSize = size;
+			bodyDot = null;
+			headDot = null;
+		}
+	}
+
+	public void setColors(Color body, Color head) {
+		if (!body.equals(bodyColor))
+			bodyDot = null;
+		if (!head.equals(headColor))
+			headDot = null;
+		bodyColor = body;
+		headColor = head;
+	} // end of setColors()
+
+	public void drawBodyDot(Graphics g, int x, int y) {
+		if (bodyDot == null)
+			bodyDot = makeDot(bodyColor);
+		g.drawImage(bodyDot, x, y, null);
+	}
+
+	public void drawHeadDot(Graphics g, int x, int y) {
+		if (headDot == null)
+			headDot = makeDot(headColor);
+		g.drawImage(headDot, x, y, null);
+	}
+
+	private BufferedImage makeDot(Color c)
+	// the same pixels as fillOval() at (0,0), on a transparent background
+	{
+		BufferedImage im = makeImage(dotSize, dotSize, Transparency.BITMASK);
+		Graphics g = im.getGraphics();
+		g.setColor(c);
+		g.fillOval(0, 0, dotSize, dotSize);
+		g.dispose();
+		return im;
+	} // end of makeDot()
+
+	static BufferedImage makeImage(int w, int h, int transparency)
+	/* an image compatible with the screen, so Java2D can accelerate
+	   copying it, or a plain RGB/ARGB one when there is no screen */
+	{
+		if (GraphicsEnvironment.isHeadless())
+			return new BufferedImage(w, h, (transparency == Transparency.OPAQUE) ?
+							BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().
+							getDefaultScreenDevice().getDefaultConfiguration();
+		return gc.createCompatibleImage(w, h, transparency);
+	} // end of makeImage()
+
+}
@@ -0,0 +1,10 @@
+package engine;
+
+// implemented by the front-ends to show the game status outside the panel
+public interface StatusListener {
+
+	void setBoxNumber(int no);
+
+	void setTimeSpent(long t);
+
+}
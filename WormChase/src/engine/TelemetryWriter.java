@@ -0,0 +1,214 @@
+package engine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* Streams a record of every frame to a file without slowing the game
+ * loop down. The game thread puts each record into a bounded ring and
+ * carries on; a background thread takes the records out in batches and
+ * writes them with a FileChannel. If the writer falls so far behind
+ * that the ring is full, new records are dropped (and counted) rather
+ * than making the game thread wait.
+ *
+ * The ring has one producer (the game thread) and one consumer (the
+ * writer thread), so it needs no locks: each side only advances its
+ * own index, and publishes it with an ordered write after filling or
+ * emptying a slot.
+ *
+ * The file is a header (magic number, version, the number of longs in
+ * a record) followed by the records, each RECORD_LONGS longs:
+ *   frame no., frame start (ns since the first frame), update, render
+ *   and present times (ns), frame time (ns), frames skipped, tick
+ * The panels write one when started with -Dwormchase.telemetry=<file>;
+ * java engine.TelemetryWriter <file> prints a file as CSV.
+ */
+public class TelemetryWriter implements Runnable {
+
+	static final int MAGIC = 0x5754454C;	// "WTEL"
+	static final int VERSION = 1;
+	static final int RECORD_LONGS = 8;
+
+	private static final int RING_SIZE = 8192;		// records; a power of 2
+	private static final int BATCH_BYTES = 64*1024;
+	private static final long IDLE_WAIT = 10000000L;	// 10 ms; the writer's wait when the ring is empty
+
+	private long[] ring = new long[RING_SIZE * RECORD_LONGS];
+	private AtomicLong head = new AtomicLong(0);	// next record to fill; written by the game thread
+	private AtomicLong tail = new AtomicLong(0);	// next record to write; written by the writer thread
+	private long cachedTail = 0;		// the game thread's last look at tail
+
+	private long dropped = 0;		// only changed by the game thread
+	private long firstStart = -1L;
+
+	private FileChannel channel;
+	private ByteBuffer buf;
+	private long numWritten = 0;
+	private volatile boolean running = true;
+	private Thread writerThread;
+
+	public TelemetryWriter(String fnm) throws IOException {
+		channel = FileChannel.open(Paths.get(fnm), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buf = ByteBuffer.allocateDirect(BATCH_BYTES);
+		buf.putInt(MAGIC);
+		buf.putShort((short) VERSION);
+		buf.putShort((short) RECORD_LONGS);
+
+		writerThread = new Thread(this, "WormChase telemetry");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	} // end of TelemetryWriter()
+
+	public static TelemetryWriter createIfRequested()
+	// return a writer if the wormchase.telemetry property names a file, otherwise null
+	{
+		String fnm = System.getProperty("wormchase.telemetry");
+		if (fnm == null)
+			return null;
+		try {
+			System.out.println("Writing frame telemetry to " + fnm);
+			return new TelemetryWriter(fnm);
+		}
+		catch (IOException e) {
+			System.out.println("Could not write telemetry to " + fnm + ": " + e);
+			return null;
+		}
+	} // end of createIfRequested()
+
+	public boolean record(long frame, long frameStart, long updateTime, long renderTime,
+							long presentTime, long frameTime, int skips, long tick)
+	/* called by the game thread; returns false if the record was
+	   dropped because the ring is full */
+	{
+		long h = head.get();
+		if (h - cachedTail >= RING_SIZE) {
+			cachedTail = tail.get();
+			if (h - cachedTail >= RING_SIZE) {
+				dropped++;
+				return false;
+			}
+		}
+		if (firstStart < 0)
+			firstStart = frameStart;
+
+		int i = (int) (h & (RING_SIZE-1)) * RECORD_LONGS;
+		ring[i] = frame;
+		ring[i+1] = frameStart - firstStart;
+		ring[i+2] = updateTime;
+		ring[i+3] = renderTime;
+		ring[i+4] = presentTime;
+		ring[i+5] = frameTime;
+		ring[i+6] = skips;
+		ring[i+7] = tick;
+		head.lazySet(h+1);		// publish the record
+		return true;
+	} // end of record()
+
+	public void run()
+	// the writer thread: write the records in batches until close()
+	{
+		try {
+			while (running) {
+				if (!drain())
+					LockSupport.parkNanos(IDLE_WAIT);
+			}
+			drain();		// whatever came in before close()
+			flush();
+		}
+		catch (IOException e) {
+			System.out.println("Telemetry write error: " + e);
+		}
+	} // end of run()
+
+	private boolean drain() throws IOException
+	// copy all the published records to the file; false if there were none
+	{
+		long t = tail.get();
+		long h = head.get();
+		if (t == h)
+			return false;
+		while (t < h) {
+			if (buf.remaining() < RECORD_LONGS*8)
+				flush();
+			int i = (int) (t & (RING_SIZE-1)) * RECORD_LONGS;
+			for (int j = 0; j < RECORD_LONGS; j++)
+				buf.putLong(ring[i+j]);
+			t++;
+			tail.lazySet(t);		// free the slot
+			numWritten++;
+		}
+		flush();
+		return true;
+	} // end of drain()
+
+	private void flush() throws IOException {
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write(buf);
+		buf.clear();
+	}
+
+	public void close()
+	/* called by the game thread when it has finished recording; waits
+	   for the writer to empty the ring and close the file */
+	{
+		running = false;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join();
+			channel.close();
+		}
+		catch (InterruptedException e) {}
+		catch (IOException e)
+		{	System.out.println("Telemetry close error: " + e); }
+		System.out.println("Telemetry records written/dropped: " + numWritten + " / " + dropped);
+	} // end of close()
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public static void main(String args[])
+	// print a telemetry file as CSV
+	{
+		if (args.length != 1) {
+			System.out.println("Usage: java engine.TelemetryWriter <telemetry file>");
+			System.exit(0);
+		}
+		try (DataInputStream in = new DataInputStream(
+							new BufferedInputStream(new FileInputStream(args[0])))) {
+			if ((in.readInt() != MAGIC) || (in.readShort() != VERSION)) {
+				System.out.println(args[0] + " is not a telemetry file");
+				return;
+			}
+			int numLongs = in.readShort();
+			System.out.println("frame,start_ns,update_ns,render_ns,present_ns,frame_ns,skips,tick");
+			StringBuilder sb = new StringBuilder();
+			while (true) {
+				sb.setLength(0);
+				for (int j = 0; j < numLongs; j++) {
+					long v = in.readLong();
+					if (j < RECORD_LONGS) {
+						if (j > 0)
+							sb.append(',');
+						sb.append(v);
+					}
+				}
+				System.out.println(sb);
+			}
+		}
+		catch (EOFException e) {}
+		catch (IOException e)
+		{	System.out.println("Could not read " + args[0] + ": " + e); }
+	} // end of main()
+
+}
@@ -0,0 +1,59 @@
+package engine;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/* A line of text drawn once into an image, so that drawing it again
+ * is one image copy: no String building, formatting or glyph layout.
+ * The owner calls setText() only when the text has changed, which for
+ * the status lines is about once a second.
+ */
+class TextImage {
+
+	private Font font;
+	private Color color;
+	private FontMetrics metrics;
+	private int pad;			// room for glyphs that overhang their advance
+
+	private BufferedImage image;		// null until the first setText()
+
+	TextImage(Font font, Color color) {
+		this.font = font;
+		this.color = color;
+		BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		Graphics g = scratch.getGraphics();
+		metrics = g.getFontMetrics(font);
+		g.dispose();
+		pad = font.getSize()/4 + 1;
+	} // end of TextImage()
+
+	void setText(String text) {
+		int width = Math.max(1, metrics.stringWidth(text) + 2*pad);
+		int height = metrics.getMaxAscent() + metrics.getMaxDescent() + 2*pad;
+		if ((image == null) || (image.getWidth() < width) || (image.getHeight() != height))
+			image = SpriteCache.makeImage(width, height, Transparency.BITMASK);
+
+		Graphics2D g = image.createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, image.getWidth(), height);	// make it all transparent again
+		g.setComposite(AlphaComposite.SrcOver);
+		g.setFont(font);
+		g.setColor(color);
+		g.drawString(text, pad, pad + metrics.getMaxAscent());
+		g.dispose();
+	} // end of setText()
+
+	void draw(Graphics g, int x, int y)
+	// like g.drawString(text, x, y): (x,y) is the start of the baseline
+	{
+		if (image != null)
+			g.drawImage(image, x - pad, y - pad - metrics.getMaxAscent(), null);
+	}
+
+}
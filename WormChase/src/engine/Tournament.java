@@ -0,0 +1,200 @@
+package engine;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Plays many headless games between ScriptedPlayers and the worm, in
+ * parallel on a ForkJoinPool, and reports each player's catch rate and
+ * the distributions of its scores and times to catch the worm.
+ *
+ * Game g gets the same worm seed whichever player plays it, so the
+ * players face the same worms. The game clock is a ManualClock moved
+ * on by one period per tick, so the time spent (and so the score) is
+ * in game time, and a run gives the same results however many cores
+ * it has. A game the player hasn't won after MAX_SECS is a loss.
+ *
+ *   java engine.Tournament [games per player] [seed] [player ...]
+ */
+public class Tournament {
+
+	private static final int UPS = 80;		// updates/sec, as in the panels
+	private static final long PERIOD = 1000000000L/UPS;	// in ns
+	private static final int MAX_SECS = 120;
+
+	private static final int WIDTH = 500;	// the windowed panel's size
+	private static final int HEIGHT = 400;
+
+	// games per fork-join task; smaller ranges are played sequentially
+	private static final int CHUNK_SIZE = 4;
+
+	private String[] players;
+	private int numGames;		// per player
+	private long seed;
+
+	// the results, indexed by player*numGames + game
+	private int[] scores;
+	private long[] catchTicks;	// -1 if the worm wasn't caught
+	private int[] boxesUsed;
+	private long totalTicks = 0;
+
+	public Tournament(String[] players, int numGames, long seed) {
+		this.players = players;
+		this.numGames = numGames;
+		this.seed = seed;
+		scores = new int[players.length * numGames];
+		catchTicks = new long[players.length * numGames];
+		boxesUsed = new int[players.length * numGames];
+	} // end of Tournament()
+
+	public void run(ForkJoinPool pool) {
+		pool.invoke( new GamesTask(0, scores.length) );
+		for (int i = 0; i < catchTicks.length; i++)
+			totalTicks += (catchTicks[i] >= 0) ? catchTicks[i] : (long) MAX_SECS*UPS;
+	}
+
+	private class GamesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int lo, hi;
+
+		GamesTask(int lo, int hi) {
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute() {
+			if (hi - lo <= CHUNK_SIZE) {
+				for (int i = lo; i < hi; i++)
+					playGame(i);
+			}
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll( new GamesTask(lo, mid), new GamesTask(mid, hi) );
+			}
+		}
+	} // end of GamesTask class
+
+	private void playGame(int i)
+	// play game i to the end, and store its result; only touches slot i
+	{
+		int game = i % numGames;
+		SplittableRandom gameRand = new SplittableRandom(seed + game*0x9E3779B97F4A7C15L);
+		long wormSeed = gameRand.nextLong();
+		ScriptedPlayer player = ScriptedPlayer.create(players[i / numGames], gameRand.nextLong());
+
+		ManualClock clock = new ManualClock();
+		WormEngine engine = new WormEngine(WIDTH, HEIGHT, clock, null, wormSeed);
+		engine.startGame();
+
+		long maxTicks = (long) MAX_SECS*UPS;
+		long tick = 0;
+		while (!engine.isGameOver() && (tick < maxTicks)) {
+			player.act(engine, tick);
+			if (engine.isGameOver())
+				break;
+			engine.tick();
+			tick++;
+			clock.advance(PERIOD);
+			if ((tick % UPS) == 0)
+				engine.updateTimeSpent();
+		}
+
+		scores[i] = engine.getScore();
+		catchTicks[i] = engine.isGameOver() ? tick : -1L;
+		boxesUsed[i] = engine.getNumObstacles();
+	} // end of playGame()
+
+	public void printResults() {
+		DecimalFormat df = new DecimalFormat("0.##");
+		for (int p = 0; p < players.length; p++) {
+			int from = p*numGames;
+			int numCaught = 0;
+			int[] caughtScores = new int[numGames];
+			double[] catchSecs = new double[numGames];
+			int[] boxes = Arrays.copyOfRange(boxesUsed, from, from + numGames);
+			for (int i = from; i < from + numGames; i++) {
+				if (catchTicks[i] >= 0) {
+					caughtScores[numCaught] = scores[i];
+					catchSecs[numCaught] = (double) catchTicks[i]/UPS;
+					numCaught++;
+				}
+			}
+			caughtScores = Arrays.copyOf(caughtScores, numCaught);
+			catchSecs = Arrays.copyOf(catchSecs, numCaught);
+			Arrays.sort(caughtScores);
+			Arrays.sort(catchSecs);
+			Arrays.sort(boxes);
+
+			System.out.println(players[p] + ": caught " + numCaught + " / " + numGames +
+							" (" + df.format(100.0*numCaught/numGames) + "%)");
+			if (numCaught > 0) {
+				System.out.println("  score   p10/p50/p90/max: " + caughtScores[percentile(numCaught, 10)] +
+						" / " + caughtScores[percentile(numCaught, 50)] +
+						" / " + caughtScores[percentile(numCaught, 90)] +
+						" / " + caughtScores[numCaught-1]);
+				System.out.println("  secs    p10/p50/p90/max: " + df.format(catchSecs[percentile(numCaught, 10)]) +
+						" / " + df.format(catchSecs[percentile(numCaught, 50)]) +
+						" / " + df.format(catchSecs[percentile(numCaught, 90)]) +
+						" / " + df.format(catchSecs[numCaught-1]));
+			}
+			System.out.println("  boxes   p10/p50/p90/max: " + boxes[percentile(numGames, 10)] +
+						" / " + boxes[percentile(numGames, 50)] +
+						" / " + boxes[percentile(numGames, 90)] +
+						" / " + boxes[numGames-1]);
+		}
+	} // end of printResults()
+
+	private static int percentile(int n, int percent)
+	// the index of the given percentile in a sorted array of n values
+	{
+		return Math.max(0, (int) Math.ceil(percent/100.0 * n) - 1);
+	}
+
+	public long getTotalTicks() {
+		return totalTicks;
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		int numGames = 1000;
+		long seed = System.nanoTime();
+		String[] players = ScriptedPlayer.NAMES;
+		if (args.length > 0)
+			numGames = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			seed = Long.parseLong(args[1]);
+		if (args.length > 2)
+			players = Arrays.copyOfRange(args, 2, args.length);
+		if ((numGames <= 0) || (players.length == 0)) {
+			System.out.println("Usage: java engine.Tournament [games per player] [seed] [player ...]");
+			System.out.println("There must be at least one game per player, and one player");
+			System.exit(0);
+		}
+		for (int p = 0; p < players.length; p++) {
+			if (ScriptedPlayer.create(players[p], 0) == null) {
+				System.out.println("Unknown player: " + players[p] +
+							"; use one of " + Arrays.toString(ScriptedPlayer.NAMES));
+				System.exit(0);
+			}
+		}
+
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		Tournament tournament = new Tournament(players, numGames, seed);
+		long startTime = System.nanoTime();
+		tournament.run(pool);
+		long timeDiff = System.nanoTime() - startTime;
+
+		tournament.printResults();
+		DecimalFormat df = new DecimalFormat("0.##");
+		System.out.println("Games: " + (numGames*players.length) + " in " +
+					df.format(timeDiff/1000000.0) + " ms on " + pool.getParallelism() + " threads (" +
+					df.format(numGames*players.length * 1000000000.0 / timeDiff) + " games/sec, " +
+					df.format(tournament.getTotalTicks() * 1000000000.0 / timeDiff) + " ticks/sec)");
+		System.out.println("Seed: " + seed);
+	} // end of main()
+
+}
@@ -0,0 +1,48 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Passes the latest of a series of objects from one writer thread to
+ * one reader thread without locking or copying. There are three
+ * slots: the writer fills the back one and publish() swaps it with
+ * the middle one; getFront() swaps the middle slot to the front if
+ * something new was published since. Neither side ever waits, and
+ * the reader always gets the newest complete object.
+ */
+public class TripleBuffer<T> {
+
+	private static final int INDEX_MASK = 3;
+	private static final int FRESH = 4;	// set when the middle slot has been published
+
+	private Object[] slots;
+	private AtomicInteger middle = new AtomicInteger(1);
+	private int back = 2;	// only used by the writer
+	private int front = 0;	// only used by the reader
+
+	public TripleBuffer(T a, T b, T c) {
+		slots = new Object[] { a, b, c };
+	}
+
+	@SuppressWarnings("unchecked")
+	public T getBack()
+	// the writer's slot
+	{
+		return (T) slots[back];
+	}
+
+	public void publish()
+	// hand the back slot to the reader, and take the middle one as the new back
+	{
+		back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T getFront()
+	// the newest published slot (unchanged if nothing new has been published)
+	{
+		if ((middle.get() & FRESH) != 0)
+			front = middle.getAndSet(front) & INDEX_MASK;
+		return (T) slots[front];
+	}
+
+}
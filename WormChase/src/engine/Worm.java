@@ -0,0 +1,522 @@
+package engine;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Worm {
+
+	public static final int DEFAULT_LENGTH = 40;
+	public static final int MAX_LENGTH = 1 << 30;
+
+	private static final int INITIAL_CAPACITY = 64;	// dots; a power of 2
+
+	static final int DOTSIZE = 12;
+
+	// the widest or highest panel, as the dots' positions are shorts
+	public static final int MAX_PANEL_SIZE = Short.MAX_VALUE;
+
+	private static final int NUM_PROBS = 9;
+	
+	private static final int RADIUS = DOTSIZE/2;
+
+	/* the worm's dots, stored as a circular buffer of x's and y's. The
+	 * buffer's size is a power of 2, so a position wraps around with
+	 * "& mask". It starts small and doubles as the worm grows, up to
+	 * the first power of 2 >= maxPoints. The positions are shorts, as
+	 * the panel is at most MAX_PANEL_SIZE pixels across (a dot is never
+	 * more than DOTSIZE off it), so with the grid's chain link a dot
+	 * takes 8 bytes.
+	 */
+	private short xs[], ys[];
+	private int mask;
+	private int nPoints;
+	private int maxPoints;	// the worm's full length
+	int tailPosn, headPosn;  // tail and head of buffer
+
+	/* The dots are also bucketed into a DotGrid, so touchedAt() and
+	 * hitsBody() only look at the dots in the few cells near the point,
+	 * however long the worm is. move() adds the head to it and drops
+	 * the tail it forgets. The grid is only made when one of them is
+	 * first called, so worms that are never touched (e.g. most of a
+	 * WormSwarm's) don't pay for it.
+	 */
+	private DotGrid grid = null;
+
+	/* every dot the worm has had is numbered in order, so a GameState
+	 * can copy just the dots added since its last copy; the current
+	 * dots are numAdded-nPoints to numAdded-1. A worm's id changes
+	 * when it is restored, as its dots are then new ones. */
+	private static final AtomicLong nextId = new AtomicLong(0);
+	private long id = nextId.getAndIncrement();
+	private long numAdded = 0;
+
+	// compass direction/bearing constants
+	private static final int NUM_DIRS = 8;
+	private static final int N = 0;
+	private static final int NE = 1;
+	private static final int E = 2;
+	private static final int SE = 3;
+	private static final int S = 4;
+	private static final int SW = 5;
+	private static final int W = 6;
+	private static final int NW = 7;
+
+	private int currCompass; 	// the current compass dir/bearing
+
+	// the x and y step for each compass bearing, in pixels
+	private int stepXs[], stepYs[];
+
+	// offsets to avoid an obstacle
+	private static final int FIXED_OFFS[] = {-2, 2, -4};
+
+	// the position calculated by nextPoint()
+	int nextX, nextY;
+
+	private int pWidth;
+
+	private int pHeight;
+
+	private int startX, startY;	// where the first dot goes
+	
+	private Obstacles obs;
+
+	private GameRandom rand;	// this worm's own random numbers
+
+	int[] probsForOffset = new int[NUM_PROBS];
+	{
+		probsForOffset[0] = 0; probsForOffset[1] = 0;
+		probsForOffset[2] = 0; probsForOffset[3] = 1;
+		probsForOffset[4] = 1; probsForOffset[5] = 2;
+		probsForOffset[6] = -1; probsForOffset[7] = -1;
+		probsForOffset[8] = -2;
+	}
+
+	public Worm(int PWIDTH, int PHEIGHT, Obstacles obs) {
+		this(PWIDTH, PHEIGHT, obs, new GameRandom());
+	}
+
+	public Worm(int PWIDTH, int PHEIGHT, Obstacles obs, GameRandom rand) {
+		this(PWIDTH, PHEIGHT, obs, PWIDTH/2, PHEIGHT/2, rand);	// start at the center
+	}
+
+	public Worm(int PWIDTH, int PHEIGHT, Obstacles obs, int startX, int startY,
+				GameRandom rand) {
+		this(PWIDTH, PHEIGHT, obs, startX, startY, rand, DEFAULT_LENGTH);
+	}
+
+	public Worm(int PWIDTH, int PHEIGHT, Obstacles obs, int startX, int startY,
+				GameRandom rand, int maxLength) {
+
+		if ((PWIDTH > MAX_PANEL_SIZE) || (PHEIGHT > MAX_PANEL_SIZE))
+			throw new IllegalArgumentException("panel " + PWIDTH + "x" + PHEIGHT +
+						" is bigger than " + MAX_PANEL_SIZE + " pixels across");
+		this.pWidth = PWIDTH;
+		this.pHeight = PHEIGHT;
+		this.obs = obs;
+		this.rand = rand;
+		this.startX = startX;
+		this.startY = startY;
+
+		maxPoints = Math.max(1, Math.min(maxLength, MAX_LENGTH));
+		int capacity = ceilPowerOf2( Math.min(maxPoints, INITIAL_CAPACITY) );
+		xs = new short[capacity];
+		ys = new short[capacity];
+		mask = capacity-1;
+		nPoints = 0;
+		headPosn = -1; tailPosn = -1;
+
+		// a step is DOTSIZE long, with 0.7 for the diagonals
+		stepXs = new int[NUM_DIRS];
+		stepYs = new int[NUM_DIRS];
+		setStep(N, 0.0,-1.0);
+		setStep(NE, 0.7,-0.7);
+		setStep(E, 1.0,0.0);
+		setStep(SE, 0.7,0.7);
+		setStep(S, 0.0,1.0);
+		setStep(SW, -0.7,0.7);
+		setStep(W, -1.0,0.0);
+		setStep(NW, -0.7,-0.7);
+
+	}
+
+	private static int ceilPowerOf2(int n) {
+		return (n <= 1) ? 1 : Integer.highestOneBit(n-1) << 1;
+	}
+
+	public void setMaxLength(int maxLength)
+	/* let the worm grow to maxLength dots, e.g. in an endurance game;
+	   a worm never gets shorter, so a smaller length is ignored */
+	{
+		if (maxLength > maxPoints)
+			maxPoints = Math.min(maxLength, MAX_LENGTH);
+	}
+
+	public int getMaxLength() {
+		return maxPoints;
+	}
+
+	private void setStep(int bearing, double incrX, double incrY) {
+		stepXs[bearing] = (int)(DOTSIZE * incrX);
+		stepYs[bearing] = (int)(DOTSIZE * incrY);
+	}
+
+	void nextPoint(int prevPosn, int bearing)
+	// store the next position in nextX/nextY, so no Point is created
+	{
+		int newX = xs[prevPosn] + stepXs[bearing];
+		int newY = ys[prevPosn] + stepYs[bearing];
+
+		// modify newX/newY if < 0, or > pWidth/pHeight; use wraparound
+		if (newX + DOTSIZE < 0)	// is circle off left edge of canvas?
+			newX = newX + pWidth;
+		else if (newX > pWidth)	// is circle off right edge of canvas?
+			newX = newX - pWidth;
+
+		if (newY + DOTSIZE < 0)	// is circle off top of canvas?
+			newY = newY + pHeight;
+		else if (newY > pHeight) // is circle off bottom of canvas
+			newY = newY - pHeight;
+		nextX = newX;
+		nextY = newY;
+	}	// end of nextPoint()
+
+	private int varyBearing()
+	// vary the copass bearing semi-randomly
+	{
+		int newOffset = probsForOffset[ rand.nextInt(NUM_PROBS) ];
+		return calcBearing(newOffset);
+	}
+
+	private int calcBearing(int offset) {
+		// use the offset to calculate a new compass bearing based
+		// on the current compass direction
+		int turn =  currCompass + offset;
+		// ensure that the turn is between N to NW (0 to 7)
+		if (turn >= NUM_DIRS)
+			turn = turn - NUM_DIRS;
+		else if (turn < 0)
+			turn = NUM_DIRS + turn;
+		return turn;
+	} // end of calcBearing()
+
+	void newHead(int prevPosn)
+	{
+		int newBearing = varyBearing();
+		nextPoint(prevPosn, newBearing);
+
+		if (obs.hits(nextX, nextY, DOTSIZE)) {
+			for (int i = 0; i < FIXED_OFFS.length; i++) {
+				newBearing = calcBearing(FIXED_OFFS[i]);
+				nextPoint(prevPosn, newBearing);
+				if (!obs.hits(nextX, nextY, DOTSIZE))
+					break;	// one of the fixed offsets will work
+			}
+		}
+		xs[headPosn] = (short) nextX; 	// new head position
+		ys[headPosn] = (short) nextY;
+		currCompass = newBearing;	// new compass direction
+	} // end of newHead()
+
+	public boolean nearHead(int x, int y) {
+		// is (x,y) near the worm's head?
+		if (nPoints > 0) {
+			if ( (Math.abs( xs[headPosn] + RADIUS - x) <= DOTSIZE) &&
+				 (Math.abs( ys[headPosn] + RADIUS - y) <= DOTSIZE) )
+				return true;
+		}
+		return false;
+	}
+
+	public boolean touchedAt(int x, int y) {
+		// is (x,y) near any part of the worm's body (not its head)?
+		return bodyDotIn(x - RADIUS - DOTSIZE, x - RADIUS + DOTSIZE,
+						 y - RADIUS - DOTSIZE, y - RADIUS + DOTSIZE);
+	} // end of touchedAt()
+
+	public boolean hitsBody(int x, int y, int size)
+	// does a size*size square at (x,y) overlap any of the body's dots (not the head)?
+	{
+		return bodyDotIn(x - DOTSIZE + 1, x + size - 1, y - DOTSIZE + 1, y + size - 1);
+	}
+
+	private boolean bodyDotIn(int xLo, int xHi, int yLo, int yHi)
+	/* is there a body dot whose top-left is in xLo..xHi, yLo..yHi?
+	   The cell in the middle of the range is looked at first, since
+	   for touchedAt() all its dots are in range, which matters when
+	   a very long worm has put many dots into each cell */
+	{
+		if (grid == null) {
+			grid = newGrid(xs.length);
+			rebuildGrid();
+		}
+		int col0 = Math.floorDiv(xLo, DOTSIZE);
+		int col1 = Math.min(Math.floorDiv(xHi, DOTSIZE), col0 + grid.numCols - 1);
+		int row0 = Math.floorDiv(yLo, DOTSIZE);
+		int row1 = Math.min(Math.floorDiv(yHi, DOTSIZE), row0 + grid.numRows - 1);
+		int midCol = Math.floorDiv((xLo + xHi) >> 1, DOTSIZE);
+		int midRow = Math.floorDiv((yLo + yHi) >> 1, DOTSIZE);
+
+		if (cellHasDotIn(midCol, midRow, xLo, xHi, yLo, yHi))
+			return true;
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				if (((row != midRow) || (col != midCol)) &&
+					cellHasDotIn(col, row, xLo, xHi, yLo, yHi))
+					return true;
+			}
+		}
+		return false;
+	} // end of bodyDotIn()
+
+	private boolean cellHasDotIn(int col, int row, int xLo, int xHi, int yLo, int yHi) {
+		int i = grid.first(col, row);
+		while (i != -1) {
+			if ((i != headPosn) && (xs[i] >= xLo) && (xs[i] <= xHi) &&
+				(ys[i] >= yLo) && (ys[i] <= yHi))
+				return true;
+			i = grid.next(i);
+		}
+		return false;
+	} // end of cellHasDotIn()
+
+	private void grow()
+	/* double the buffer, copying the dots to its start, tail first,
+	   and rebuild the grid's chains for their new positions */
+	{
+		int capacity = xs.length*2;
+		short[] newXs = new short[capacity];
+		short[] newYs = new short[capacity];
+		int i = tailPosn;
+		for (int n = 0; n < nPoints; n++) {
+			newXs[n] = xs[i];
+			newYs[n] = ys[i];
+			i = (i+1) & mask;
+		}
+		xs = newXs;
+		ys = newYs;
+		mask = capacity-1;
+		tailPosn = 0;
+		headPosn = nPoints-1;
+		if (grid != null) {
+			grid.setCapacity(capacity);
+			rebuildGrid();
+		}
+	} // end of grow()
+
+	private void rebuildGrid()
+	// chain all the dots into the grid again, tail first
+	{
+		grid.clear();
+		int i = tailPosn;
+		for (int n = 0; n < nPoints; n++) {
+			grid.add(i, xs[i], ys[i]);
+			i = (i+1) & mask;
+		}
+	} // end of rebuildGrid()
+
+	public void move() {
+		if ((nPoints < maxPoints) && (nPoints == xs.length))
+			grow();		// the buffer is full, but the worm can be longer
+
+		int prevPosn = headPosn;
+		// save old head posn while creating a new one
+		headPosn = (headPosn + 1) & mask;
+
+		if (nPoints == 0) { 	// empty array at start
+			tailPosn = headPosn;
+			currCompass = rand.nextInt(NUM_DIRS); 	// random dir.
+			xs[headPosn] = (short) startX;	// start pt
+			ys[headPosn] = (short) startY;
+			nPoints++;
+		}
+		else if (nPoints == maxPoints) {	// the worm is full length
+			if (grid != null)
+				grid.removeOldest(tailPosn, xs[tailPosn], ys[tailPosn]);
+			tailPosn = (tailPosn + 1) & mask;	// forget last tail
+			newHead(prevPosn);
+		}
+		else { 	// still room in xs[]/ys[]
+			newHead(prevPosn);
+			nPoints++;
+		}
+		if (grid != null)
+			grid.add(headPosn, xs[headPosn], ys[headPosn]);
+		numAdded++;
+	} // end of move()
+
+	public int getLength() {
+		return nPoints;
+	}
+
+	public int getHeadX()
+	// the top-left of the head dot; only meaningful once the worm has moved
+	{
+		return xs[headPosn];
+	}
+
+	public int getHeadY() {
+		return ys[headPosn];
+	}
+
+	public int copyDots(int[] dotXs, int[] dotYs)
+	/* copy the dots into dotXs[]/dotYs[], tail first and head last;
+	   the arrays must have room for getLength() dots */
+	{
+		int i = tailPosn;
+		for (int n = 0; n < nPoints; n++) {
+			dotXs[n] = xs[i];
+			dotYs[n] = ys[i];
+			i = (i+1) & mask;
+		}
+		return nPoints;
+	} // end of copyDots()
+
+	DotGrid newGrid(int capacity)
+	// an empty grid like the worm's, for a ring of capacity dots
+	{
+		return new DotGrid(pWidth, pHeight, capacity);
+	}
+
+	long getId() {
+		return id;
+	}
+
+	long getNumAdded()
+	// how many dots the worm has had, so the head is dot getNumAdded()-1
+	{
+		return numAdded;
+	}
+
+	int getDotX(long dot)
+	// the x of a current dot, numbered as in getNumAdded()
+	{
+		return xs[ (tailPosn + (int) (dot - (numAdded - nPoints))) & mask ];
+	}
+
+	int getDotY(long dot) {
+		return ys[ (tailPosn + (int) (dot - (numAdded - nPoints))) & mask ];
+	}
+
+	long stateHash()
+	// combine the bearing and all the dots, to compare worms in a replay
+	{
+		long hash = 31*nPoints + currCompass;
+		if (nPoints > 0) {
+			int i = tailPosn;
+			while (true) {
+				hash = 31*(31*hash + xs[i]) + ys[i];
+				if (i == headPosn)
+					break;
+				i = (i+1) & mask;
+			}
+		}
+		return hash;
+	} // end of stateHash()
+
+	int savedSize()
+	// the number of bytes save() writes
+	{
+		return 5*4 + 2*8 + 2*2*nPoints;
+	}
+
+	void save(ByteBuffer buf)
+	/* write the worm at buf's position, and move past it: its full
+	   length, no. of dots, bearing, start, random number state, and
+	   then the dots' x's and y's, tail first */
+	{
+		buf.putInt(maxPoints);
+		buf.putInt(nPoints);
+		buf.putInt(currCompass);
+		buf.putInt(startX);
+		buf.putInt(startY);
+		buf.putLong(rand.getSeed());
+		buf.putLong(rand.getGamma());
+		putDots(buf, xs);
+		putDots(buf, ys);
+	} // end of save()
+
+	private void putDots(ByteBuffer buf, short[] a)
+	// copy the dots in the ring, tail first, in at most two pieces
+	{
+		if (nPoints > 0) {
+			ShortBuffer sb = buf.asShortBuffer();
+			int firstLen = Math.min(nPoints, a.length - tailPosn);
+			sb.put(a, tailPosn, firstLen);
+			sb.put(a, 0, nPoints - firstLen);
+		}
+		buf.position(buf.position() + 2*nPoints);
+	} // end of putDots()
+
+	static boolean canRestore(ByteBuffer buf)
+	/* check that buf holds a worm written by save(), and move past it;
+	   false if the numbers don't make sense or there aren't enough
+	   bytes for the dots */
+	{
+		if (buf.remaining() < 5*4 + 2*8)
+			return false;
+		int maxLength = buf.getInt();
+		int numDots = buf.getInt();
+		int compass = buf.getInt();
+		buf.position(buf.position() + 2*4 + 2*8);
+		if ((maxLength < 1) || (maxLength > MAX_LENGTH) || (numDots < 0) ||
+			(numDots > maxLength) || (compass < 0) || (compass >= NUM_DIRS) ||
+			(buf.remaining() < 2*2L*numDots))
+			return false;
+		buf.position(buf.position() + 2*2*numDots);
+		return true;
+	} // end of canRestore()
+
+	boolean restore(ByteBuffer buf)
+	/* replace the worm with one written by save(), and move past it;
+	   returns false, leaving the worm as it was, if canRestore() does */
+	{
+		if (!canRestore( buf.duplicate().order(buf.order()) ))
+			return false;
+		int maxLength = buf.getInt();
+		int numDots = buf.getInt();
+		int compass = buf.getInt();
+		int x = buf.getInt();
+		int y = buf.getInt();
+		long seed = buf.getLong();
+		long gamma = buf.getLong();
+
+		maxPoints = maxLength;
+		nPoints = numDots;
+		currCompass = compass;
+		startX = x;
+		startY = y;
+		rand = new GameRandom(seed, gamma);
+
+		int capacity = ceilPowerOf2( Math.max(nPoints, Math.min(maxPoints, INITIAL_CAPACITY)) );
+		xs = new short[capacity];
+		ys = new short[capacity];
+		mask = capacity-1;
+		buf.asShortBuffer().get(xs, 0, nPoints);
+		buf.position(buf.position() + 2*nPoints);
+		buf.asShortBuffer().get(ys, 0, nPoints);
+		buf.position(buf.position() + 2*nPoints);
+		tailPosn = (nPoints > 0) ? 0 : -1;
+		headPosn = nPoints-1;
+		grid = null;		// made again when needed
+		id = nextId.getAndIncrement();
+		numAdded = nPoints;
+		return true;
+	} // end of restore()
+
+	public void draw(Graphics g) {
+		// draw a black worm with a red head
+		if (nPoints > 0) {
+			g.setColor(Color.black);
+			int i = tailPosn;
+			while(i != headPosn) {
+				g.fillOval(xs[i], ys[i], DOTSIZE, DOTSIZE);
+				i = (i+1) & mask;
+			}
+			g.setColor(Color.red);
+			g.fillOval(xs[headPosn], ys[headPosn], DOTSIZE, DOTSIZE);
+		}
+	} // end of draw()
+
+}
@@ -0,0 +1,381 @@
+package engine;
+
+import java.awt.Graphics;
+import java.nio.ByteBuffer;
+
+/* The game state of a worm chase: the worm, the obstacles, the score
+ * and the paused/game over flags. There is no display or pacing code
+ * in here, so the game can be stepped with tick()/advance() as fast
+ * as the CPU allows (e.g. under java.awt.headless=true). The windowed
+ * and full-screen WormPanels pace, draw and feed input to an engine.
+ *
+ * The engine isn't locked: only the thread calling tick() may change
+ * or snapshot it. Input from the Swing event thread goes through the
+ * post methods, which queue it for the start of the next tick; that
+ * is also where a recording will replay it.
+ */
+public class WormEngine {
+
+	private int pWidth, pHeight;
+	private Obstacles obs;
+	private Worm fred;
+	private Clock clock;
+	private StatusListener listener;
+
+	private boolean isPaused;
+	private boolean gameOver;
+
+	private int score;
+
+	private long gameStartTime;
+	private int timeSpentInGame;	// in seconds
+	private long restoredTime = 0;	// game time (ns) spent before a restore()
+
+	private long tickCount = 0;
+	private volatile long ticksDone = 0;	// tickCount, for other threads to read
+	private long startTick = 0;		// tickCount when startGame() was called
+
+	private InputQueue input = new InputQueue();
+
+	private long seed;	// the same seed gives the same worm moves
+
+	private InputRecorder recorder = null;
+	private SpectatorServer spectators = null;
+
+	public WormEngine(int pWidth, int pHeight, Clock clock, StatusListener listener,
+					long seed) {
+		this.pWidth = pWidth;
+		this.pHeight = pHeight;
+		this.clock = clock;
+		this.listener = listener;
+		this.seed = seed;
+
+		// create game components
+		obs = new Obstacles(pWidth, pHeight, listener);
+		fred = new Worm(pWidth, pHeight, obs, new GameRandom(seed));
+
+		gameStartTime = clock.nanoTime();
+	} // end of WormEngine()
+
+	public WormEngine(int pWidth, int pHeight, Clock clock, StatusListener listener) {
+		this(pWidth, pHeight, clock, listener, System.nanoTime());
+	}
+
+	public WormEngine(int pWidth, int pHeight) {
+		this(pWidth, pHeight, Clock.SYSTEM, null);
+	}
+
+	public void startGame()
+	/* (re)start the game timer; called when the game loop begins. A
+	   restored game carries on from the time it was saved at. */
+	{
+		gameStartTime = clock.nanoTime() - restoredTime;
+		timeSpentInGame = (int) (restoredTime/1000000000L);
+		startTick = tickCount;
+	}
+
+	public void tick()
+	// apply the queued input, then advance the game by one update, as a JFR Tick event
+	{
+		GameEvents.Tick ev = new GameEvents.Tick();
+		ev.begin();
+		applyInput();
+		step();
+		ticksDone = tickCount;
+		if (spectators != null)
+			spectators.publish(this);
+		ev.end();
+		if (ev.shouldCommit()) {
+			ev.set(tickCount, fred.getLength(), obs.getNumObstacles());
+			ev.commit();
+		}
+	} // end of tick()
+
+	public void advance(long numTicks)
+	/* apply the queued input, then advance the game by numTicks updates,
+	   without any pacing; no Tick events, since this is for running many
+	   updates at once */
+	{
+		applyInput();
+		for (long i = 0; i < numTicks; i++)
+			step();
+		ticksDone = tickCount;
+		if (spectators != null)
+			spectators.publish(this);	// a whole new state, after many ticks
+	} // end of advance()
+
+	private void step() {
+		tickCount++;
+		if (!isPaused && !gameOver)
+			fred.move();
+	}
+
+	private void applyInput()
+	// carry out the input queued since the last tick, in order
+	{
+		while (input.hasNext()) {
+			switch (input.type()) {
+				case InputQueue.PRESS:
+					testPress(input.x(), input.y());
+					break;
+				case InputQueue.PAUSE:
+					setPaused(input.x() == 1);
+					break;
+				case InputQueue.TOGGLE_PAUSE:
+					setPaused(!isPaused);
+					break;
+			}
+			input.next();
+		}
+	} // end of applyInput()
+
+	public void postPress(int x, int y)
+	// called by the event thread; testPress(x,y) at the next tick
+	{
+		input.offer(InputQueue.PRESS, x, y);
+	}
+
+	public void postPause(boolean paused)
+	// called by the event thread; pause or resume at the next tick
+	{
+		input.offer(InputQueue.PAUSE, paused ? 1 : 0, 0);
+	}
+
+	public void postTogglePause()
+	// called by the event thread
+	{
+		input.offer(InputQueue.TOGGLE_PAUSE, 0, 0);
+	}
+
+	public void testPress(int x, int y)
+	// is (x,y) near the head or should an obstacle be added?
+	{
+		if (recorder != null)
+			recorder.recordPress(tickCount, x, y);
+
+		if (!isPaused && !gameOver) {
+			if (fred.nearHead(x,y)) { 	// was mouse press near the head?
+				gameOver = true;
+				score = (40 - timeSpentInGame) + 40 - obs.getNumObstacles();
+				// hack together a score
+			}
+			else { 	// add an obstacle if possible
+				if (!fred.touchedAt(x,y)) { 	// was worm's body not touched?
+					GameEvents.ObstacleAdd ev = new GameEvents.ObstacleAdd();
+					ev.begin();
+					obs.add(x,y);
+					ev.end();
+					if (ev.shouldCommit()) {
+						ev.set(tickCount, fred.getLength(), obs.getNumObstacles());
+						ev.setPosition(x, y);
+						ev.commit();
+					}
+				}
+			}
+		}
+	} // end of testPress()
+
+	public int updateTimeSpent()
+	// read the clock, and report the time spent so far
+	{
+		int secs = (int) ((clock.nanoTime() - gameStartTime)/1000000000L);	// ns --> secs
+		setTimeSpent(secs);
+		return timeSpentInGame;
+	}
+
+	void setTimeSpent(int secs)
+	// also used by InputReplay, which has no real clock to read
+	{
+		if ((recorder != null) && (secs != timeSpentInGame))
+			recorder.recordTime(tickCount, secs);
+		timeSpentInGame = secs;
+		if (listener != null)
+			listener.setTimeSpent( timeSpentInGame );
+	}
+
+	public void draw(Graphics g) {
+		// draw game elements: the obstacles and the worm
+		obs.draw(g);
+		fred.draw(g);
+	}
+
+	public void resumeGame() {
+		setPaused(false);
+	}
+
+	public void pauseGame() {
+		setPaused(true);
+	}
+
+	public void togglePause() {
+		setPaused(!isPaused);
+	}
+
+	void setPaused(boolean paused) {
+		if (recorder != null)
+			recorder.recordPause(tickCount, paused);
+		isPaused = paused;
+	}
+
+	public void setMaxWormLength(int maxLength)
+	/* let the worm grow to maxLength dots (it never gets shorter);
+	   only called by the ticking thread, or before it starts */
+	{
+		int oldLength = fred.getMaxLength();
+		fred.setMaxLength(maxLength);
+		if ((recorder != null) && (fred.getMaxLength() != oldLength))
+			recorder.recordLength(tickCount, fred.getMaxLength());
+	} // end of setMaxWormLength()
+
+	public int getMaxWormLength() {
+		return fred.getMaxLength();
+	}
+
+	public void setRecorder(InputRecorder recorder)
+	// record all input from now on (or stop, if recorder is null)
+	{
+		this.recorder = recorder;
+	}
+
+	public void setSpectators(SpectatorServer spectators)
+	// send the state after every tick to spectators (or stop, if null)
+	{
+		this.spectators = spectators;
+	}
+
+	public void finishRecording()
+	// called at the end of the game, once the ticking has stopped
+	{
+		if (recorder != null) {
+			recorder.finish(this);
+			recorder = null;
+		}
+	}
+
+	int savedSize() {
+		return 3*8 + 2*4 + 2 + fred.savedSize() + obs.savedSize(obs.getNumObstacles());
+	}
+
+	void save(ByteBuffer buf)
+	/* write the game at buf's position: the seed, tick count, game time
+	   (ns), score, time spent, paused and game over flags, then the worm
+	   and the obstacles; only called by the ticking thread, or once it
+	   has stopped */
+	{
+		buf.putLong(seed);
+		buf.putLong(tickCount);
+		buf.putLong(clock.nanoTime() - gameStartTime);
+		buf.putInt(score);
+		buf.putInt(timeSpentInGame);
+		buf.put((byte) (isPaused ? 1 : 0));
+		buf.put((byte) (gameOver ? 1 : 0));
+		fred.save(buf);
+		obs.save(buf, obs.getNumObstacles());
+	} // end of save()
+
+	boolean restore(ByteBuffer buf)
+	/* replace the game with one written by save(), before the game loop
+	   starts; returns false, leaving the game as it was, if the worm or
+	   obstacles couldn't be read. Both are checked before either is
+	   changed, so a damaged save never half-restores. */
+	{
+		ByteBuffer check = buf.duplicate().order(buf.order());
+		if (check.remaining() < 3*8 + 2*4 + 2)
+			return false;
+		check.position(check.position() + 3*8 + 2*4 + 2);
+		if (!Worm.canRestore(check) || !Obstacles.canRestore(check))
+			return false;
+
+		long savedSeed = buf.getLong();
+		long ticks = buf.getLong();
+		long gameTime = buf.getLong();
+		int savedScore = buf.getInt();
+		int secs = buf.getInt();
+		boolean paused = (buf.get() != 0);
+		boolean over = (buf.get() != 0);
+		fred.restore(buf);
+		obs.restore(buf);
+
+		seed = savedSeed;
+		tickCount = ticks;
+		ticksDone = ticks;
+		restoredTime = Math.max(0L, gameTime);
+		score = savedScore;
+		isPaused = paused;
+		gameOver = over;
+		timeSpentInGame = secs;
+		if (listener != null)
+			listener.setTimeSpent(secs);
+		return true;
+	} // end of restore()
+
+	public boolean isPaused() {
+		return isPaused;
+	}
+
+	public boolean isGameOver() {
+		return gameOver;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public int getTimeSpent() {
+		return timeSpentInGame;
+	}
+
+	public int getNumObstacles() {
+		return obs.getNumObstacles();
+	}
+
+	public int getDroppedInput()
+	// the presses and pauses lost because the input queue was full
+	{
+		return input.getDropped();
+	}
+
+	public void snapshot(GameState state)
+	// copy the current game state into state, for drawing
+	{
+		state.copyFrom(fred, obs, isPaused, gameOver, score, timeSpentInGame, tickCount);
+	}
+
+	public long getTickCount()
+	// may be called by any thread
+	{
+		return ticksDone;
+	}
+
+	public long getTicksSinceStart()
+	/* the ticks done since startGame(), not counting those before a
+	   restore(); may be called by any thread */
+	{
+		return ticksDone - startTick;
+	}
+
+	public int getWidth() {
+		return pWidth;
+	}
+
+	public int getHeight() {
+		return pHeight;
+	}
+
+	public Worm getWorm() {
+		return fred;
+	}
+
+	public Obstacles getObstacles() {
+		return obs;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+}
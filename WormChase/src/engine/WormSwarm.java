@@ -0,0 +1,127 @@
+package engine;
+
+import java.awt.Graphics;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Many independent worms moving around one shared Obstacles. Each
+ * tick moves every worm once; the worms are split into chunks that
+ * are moved in parallel on a ForkJoinPool. This is safe because a
+ * worm only changes its own fields, and Obstacles.hits() never locks.
+ */
+public class WormSwarm {
+
+	// worms per fork-join task; smaller ranges are moved sequentially
+	private static final int CHUNK_SIZE = 64;
+
+	private Worm[] worms;
+	private Obstacles obs;
+	private ForkJoinPool pool;
+	private long seed;
+
+	public WormSwarm(int numWorms, int pWidth, int pHeight, Obstacles obs,
+					long seed, ForkJoinPool pool) {
+		this.obs = obs;
+		this.pool = pool;
+		this.seed = seed;
+
+		/* each worm gets its own generator split off from the seed, so
+		 * the worms never share one, and a run can be repeated
+		 */
+		GameRandom rand = new GameRandom(seed);
+		worms = new Worm[numWorms];
+		for (int i = 0; i < numWorms; i++) {
+			if (i == 0)	// the first worm starts at the center, the rest anywhere
+				worms[i] = new Worm(pWidth, pHeight, obs, rand.split());
+			else
+				worms[i] = new Worm(pWidth, pHeight, obs, rand.nextInt(pWidth),
+									rand.nextInt(pHeight), rand.split());
+		}
+	} // end of WormSwarm()
+
+	public WormSwarm(int numWorms, int pWidth, int pHeight, Obstacles obs) {
+		this(numWorms, pWidth, pHeight, obs, System.nanoTime(), ForkJoinPool.commonPool());
+	}
+
+	public void setMaxLength(int maxLength)
+	// let every worm grow to maxLength dots
+	{
+		for (int i = 0; i < worms.length; i++)
+			worms[i].setMaxLength(maxLength);
+	}
+
+	public void tick()
+	// move every worm once
+	{
+		if (worms.length <= CHUNK_SIZE)
+			moveRange(0, worms.length);
+		else
+			pool.invoke( new MoveTask(0, worms.length) );
+	}
+
+	private void moveRange(int lo, int hi) {
+		for (int i = lo; i < hi; i++)
+			worms[i].move();
+	}
+
+	private class MoveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int lo, hi;
+
+		MoveTask(int lo, int hi) {
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute() {
+			if (hi - lo <= CHUNK_SIZE)
+				moveRange(lo, hi);
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll( new MoveTask(lo, mid), new MoveTask(mid, hi) );
+			}
+		}
+	} // end of MoveTask class
+
+	public int nearHead(int x, int y)
+	// return the index of a worm whose head is near (x,y), or -1
+	{
+		for (int i = 0; i < worms.length; i++) {
+			if (worms[i].nearHead(x,y))
+				return i;
+		}
+		return -1;
+	}
+
+	public boolean touchedAt(int x, int y) {
+		// is (x,y) near any part of any worm's body?
+		for (int i = 0; i < worms.length; i++) {
+			if (worms[i].touchedAt(x,y))
+				return true;
+		}
+		return false;
+	}
+
+	public void draw(Graphics g) {
+		for (int i = 0; i < worms.length; i++)
+			worms[i].draw(g);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getNumWorms() {
+		return worms.length;
+	}
+
+	public Worm getWorm(int i) {
+		return worms[i];
+	}
+
+	public Obstacles getObstacles() {
+		return obs;
+	}
+
+}
@@ -0,0 +1,63 @@
+package engine;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Obstacles.hits() for a worm-sized dot at random positions. The
+ * field grows with the number of boxes so that about a quarter of it
+ * is covered; otherwise a large box count would make almost every
+ * query an early hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ObstaclesBenchmark {
+
+	private static final int NUM_QUERIES = 1024;	// a power of 2
+
+	@Param({"10", "1000", "100000"})
+	private int numObstacles;
+
+	private Obstacles obs;
+	private int[] queryXs, queryYs;
+	private int queryIdx = 0;
+
+	@Setup
+	public void setup() {
+		int fieldLen = Math.max(1024, (int) Math.sqrt(numObstacles * Obstacles.BOX_LENGTH*Obstacles.BOX_LENGTH * 4.0));
+
+		Random rand = new Random(42);
+		obs = new Obstacles(fieldLen, fieldLen, null);
+		for (int i = 0; i < numObstacles; i++)
+			obs.add(rand.nextInt(fieldLen), rand.nextInt(fieldLen));
+
+		queryXs = new int[NUM_QUERIES];
+		queryYs = new int[NUM_QUERIES];
+		for (int i = 0; i < NUM_QUERIES; i++) {
+			queryXs[i] = rand.nextInt(fieldLen);
+			queryYs[i] = rand.nextInt(fieldLen);
+		}
+	} // end of setup()
+
+	@Benchmark
+	public boolean hits() {
+		queryIdx = (queryIdx + 1) & (NUM_QUERIES-1);
+		return obs.hits(queryXs[queryIdx], queryYs[queryIdx], Worm.DOTSIZE);
+	}
+
+}
@@ -0,0 +1,88 @@
+package engine;
+
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* One WormPanel.gameRender() frame, drawn by the GameRenderer into an
+ * offscreen image instead of the panel's back buffer, and the same
+ * frame's boxes and worm drawn by a RasterRenderer. The average time
+ * should stay well inside the 12.5 ms period at 80 FPS.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+	private static final int PWIDTH = 1024;
+	private static final int PHEIGHT = 768;
+
+	@Param({"10", "1000", "100000", "1000000"})
+	private int numObstacles;
+
+	private WormEngine engine;
+	private GameRenderer renderer;
+	private RasterRenderer raster;
+	private GameState state;
+	private BufferedImage image;
+	private Graphics g;
+
+	@Setup
+	public void setup() {
+		Random rand = new Random(42);
+		engine = new WormEngine(PWIDTH, PHEIGHT, new ManualClock(), null, 42L);
+		for (int i = 0; i < numObstacles; i++)
+			engine.getObstacles().add(rand.nextInt(PWIDTH), rand.nextInt(PHEIGHT));
+		engine.advance(100);	// grow the worm to its full length
+
+		state = new GameState();
+		engine.snapshot(state);
+		renderer = new GameRenderer(new Font("SansSerif", Font.BOLD, 24), PWIDTH, PHEIGHT);
+		image = new BufferedImage(PWIDTH, PHEIGHT, BufferedImage.TYPE_INT_RGB);
+		g = image.getGraphics();
+		raster = new RasterRenderer(PWIDTH, PHEIGHT);
+	} // end of setup()
+
+	@TearDown
+	public void tearDown() {
+		g.dispose();
+	}
+
+	@Benchmark
+	public void gameRender() {
+		renderer.render(g, state, 80.0, 80.0);
+	}
+
+	@Benchmark
+	public void rasterRender() {
+		raster.render(state, 1.0);
+	}
+
+	@Benchmark
+	public void gameRenderDamage()
+	// one update, then redraw only what it changed
+	{
+		engine.tick();
+		engine.snapshot(state);
+		renderer.renderDamage(g, state, 80.0, 80.0);
+	}
+
+}
@@ -0,0 +1,62 @@
+package engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* One WormSwarm tick, for 1 to 10k worms, on a pool of the given
+ * parallelism (0 means one thread per core).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SwarmBenchmark {
+
+	private static final int PWIDTH = 1024;
+	private static final int PHEIGHT = 768;
+
+	@Param({"1", "100", "1000", "10000"})
+	private int numWorms;
+
+	@Param({"1", "0"})
+	private int parallelism;
+
+	private ForkJoinPool pool;
+	private WormSwarm swarm;
+
+	@Setup
+	public void setup() {
+		int threads = (parallelism == 0) ? Runtime.getRuntime().availableProcessors() : parallelism;
+		pool = new ForkJoinPool(threads);
+		swarm = new WormSwarm(numWorms, PWIDTH, PHEIGHT,
+							new Obstacles(PWIDTH, PHEIGHT, null), 42L, pool);
+		for (int i = 0; i < 100; i++)	// grow the worms to their full length
+			swarm.tick();
+	} // end of setup()
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public void tick() {
+		swarm.tick();
+	}
+
+}
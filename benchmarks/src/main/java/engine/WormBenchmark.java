@@ -0,0 +1,92 @@
+package engine;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* The worm's update path (move(), newHead(), nextPoint()) and the
+ * mouse press tests (nearHead(), touchedAt()), on a full-length worm
+ * moving among a few obstacles; the usual 40 dots long, or very long.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class WormBenchmark {
+
+	private static final int PWIDTH = 1024;
+	private static final int PHEIGHT = 768;
+
+	private static final int NUM_BOXES = 100;
+	private static final int NUM_PRESSES = 1024;	// a power of 2
+
+	@Param({"40", "1000000"})
+	private int length;
+
+	private Worm fred;
+	private int[] pressXs, pressYs;
+	private int pressIdx = 0;
+	private int bearing = 0;
+
+	@Setup
+	public void setup() {
+		Random rand = new Random(42);
+		Obstacles obs = new Obstacles(PWIDTH, PHEIGHT, null);
+		for (int i = 0; i < NUM_BOXES; i++)
+			obs.add(rand.nextInt(PWIDTH), rand.nextInt(PHEIGHT));
+
+		fred = new Worm(PWIDTH, PHEIGHT, obs, PWIDTH/2, PHEIGHT/2, new GameRandom(42), length);
+		for (int i = 0; i < length + 60; i++)	// grow the worm to its full length
+			fred.move();
+
+		pressXs = new int[NUM_PRESSES];
+		pressYs = new int[NUM_PRESSES];
+		for (int i = 0; i < NUM_PRESSES; i++) {
+			pressXs[i] = rand.nextInt(PWIDTH);
+			pressYs[i] = rand.nextInt(PHEIGHT);
+		}
+	} // end of setup()
+
+	@Benchmark
+	public void move() {
+		fred.move();
+	}
+
+	@Benchmark
+	public void newHead() {
+		fred.newHead(fred.headPosn);
+	}
+
+	@Benchmark
+	public int nextPoint() {
+		bearing = (bearing + 1) & 7;
+		fred.nextPoint(fred.headPosn, bearing);
+		return fred.nextX + fred.nextY;
+	}
+
+	@Benchmark
+	public boolean nearHead() {
+		pressIdx = (pressIdx + 1) & (NUM_PRESSES-1);
+		return fred.nearHead(pressXs[pressIdx], pressYs[pressIdx]);
+	}
+
+	@Benchmark
+	public boolean touchedAt() {
+		pressIdx = (pressIdx + 1) & (NUM_PRESSES-1);
+		return fred.touchedAt(pressXs[pressIdx], pressYs[pressIdx]);
+	}
+
+}